@@ -1,9 +1,13 @@
 package ggc.app;
 
+import java.io.IOException;
 import pt.tecnico.uilib.Dialog;
+import pt.tecnico.uilib.Display;
 import pt.tecnico.uilib.menus.Menu;
+import ggc.app.exception.FileSaveFailedException;
 import ggc.core.WarehouseManager;
 import ggc.core.exception.ImportFileException;
+import ggc.server.WarehouseServer;
 
 /** Main driver for the management application. */
 public class App {
@@ -13,21 +17,50 @@ public class App {
 	 *            command line arguments.
 	 */
 	public static void main(String[] _args) {
-		try (var ui = Dialog.UI) {
-			WarehouseManager manager = new WarehouseManager();
-
-			String dataFile = System.getProperty("import");
-			if (dataFile != null) {
-				try {
-					manager.importFile(dataFile);
-				} catch (ImportFileException e) {
-					// no behavior described: just present the problem
-					e.printStackTrace();
-				}
+		WarehouseManager manager = new WarehouseManager();
+
+		String dataFile = System.getProperty("import");
+		if (dataFile != null) {
+			try {
+				manager.importFile(dataFile);
+			} catch (ImportFileException e) {
+				// no behavior described: just present the problem
+				e.printStackTrace();
+			}
+		}
+
+		// Note: In server mode, clients drive the warehouse instead of the menu
+		String serverPort = System.getProperty("server");
+		if (serverPort != null) {
+			int port;
+			try {
+				port = Integer.parseInt(serverPort);
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid server port: " + serverPort);
+				return;
 			}
 
+			try (var server = new WarehouseServer(manager, port)) {
+				System.err.println("Serving on port " + server.getPort());
+				server.serve();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			manager.awaitPendingSaves();
+			return;
+		}
+
+		try (var ui = Dialog.UI) {
 			Menu menu = new ggc.app.main.Menu(manager);
 			menu.open();
+
+			// Note: Saves are written in the background, so make sure they finish before exiting,
+			//       reporting if the last one failed
+			manager.awaitPendingSaves();
+			var failedFileName = manager.clearFailedSave();
+			if (failedFileName.isPresent()) {
+				new Display().addLine(new FileSaveFailedException(failedFileName.get()).getMessage()).display();
+			}
 		}
 	}
 
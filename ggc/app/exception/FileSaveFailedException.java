@@ -0,0 +1,16 @@
+package ggc.app.exception;
+
+import pt.tecnico.uilib.menus.CommandException;
+
+/** Exception for reporting problems saving files. */
+public class FileSaveFailedException extends CommandException {
+
+  /** Serial number for serialization. */
+  private static final long serialVersionUID = 202610171200L;
+
+  /** @param filename Problematic filename to report. */
+  public FileSaveFailedException(String filename) {
+    super(Message.problemSavingFile(filename));
+  }
+
+}
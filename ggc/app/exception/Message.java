@@ -26,6 +26,14 @@ interface Message {
     return "Problema ao abrir '" + filename + "'.";
   }
 
+  /**
+   * @param filename
+   * @return string with problem description.
+   */
+  static String problemSavingFile(String filename) {
+    return "Problema ao guardar '" + filename + "'.";
+  }
+
   /**
    * @param key
    * @return string with problem description.
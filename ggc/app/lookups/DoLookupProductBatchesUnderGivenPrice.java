@@ -20,9 +20,10 @@ public class DoLookupProductBatchesUnderGivenPrice extends Command<WarehouseMana
 	@Override
 	public void execute() throws CommandException {
 		// Get all batches under the price limit
+		// Note: Only the batches under the limit are sorted, as they're already
+		//       separated from the rest by the warehouse.
 		var priceLimit = super.integerField(PRICE_LIMIT);
-		var batches = _receiver.getBatches() //
-				.filter(_receiver.batchFilterPrice(price -> price < priceLimit)).sorted(_receiver.batchComparator());
+		var batches = _receiver.getBatchesUnderPrice(priceLimit).sorted(_receiver.batchComparator());
 
 		// Then display them all
 		for (var batch : streamIt(batches)) {
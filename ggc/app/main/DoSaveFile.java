@@ -3,7 +3,7 @@ package ggc.app.main;
 import pt.tecnico.uilib.forms.Form;
 import pt.tecnico.uilib.menus.Command;
 import pt.tecnico.uilib.menus.CommandException;
-import java.io.IOException;
+import ggc.app.exception.FileSaveFailedException;
 import ggc.core.WarehouseManager;
 
 /**
@@ -17,18 +17,23 @@ class DoSaveFile extends Command<WarehouseManager> {
 
 	@Override
 	public final void execute() throws CommandException {
+		// If the last save failed in the background, report it instead, as it's changes are still unsaved
+		// Note: Saves are written in order either way, so we wait for the last one to know if it failed
+		_receiver.awaitPendingSaves();
+		var failedFileName = _receiver.clearFailedSave();
+		if (failedFileName.isPresent()) {
+			throw new FileSaveFailedException(failedFileName.get());
+		}
+
 		// If the warehouse isn't dirty, don't do anything
 		if (!_receiver.isWarehouseDirty()) {
 			return;
 		}
 
-		// Else try to save it with the associated filename, or ask the user
-		try {
-			_receiver.save(() -> Form.requestString(Message.newSaveAs()));
-		} catch (IOException e) {
-			// Note: No `CommandException` exception to throw here
-			e.printStackTrace();
-		}
+		// Else save it in the background with the associated filename, or ask the user
+		// Note: We don't wait for it to be written, so the next command may run meanwhile. If it
+		//       fails, it's reported by the next save, or when exiting.
+		_receiver.saveAsync(() -> Form.requestString(Message.newSaveAs()));
 	}
 
 }
@@ -15,9 +15,9 @@ class DoShowGlobalBalance extends Command<WarehouseManager> {
 
 	@Override
 	public final void execute() throws CommandException {
-		var availableBalance = _receiver.getAvailableBalance();
-		var accountingBalance = _receiver.getAccountingBalance();
-		_display.addLine(Message.currentBalance(availableBalance, accountingBalance)).display();
+		// Note: Both are read at once, so they're of the same warehouse
+		var balances = _receiver.getBalances();
+		_display.addLine(Message.currentBalance(balances.getLhs(), balances.getRhs())).display();
 	}
 
 }
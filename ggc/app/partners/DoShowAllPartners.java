@@ -18,7 +18,8 @@ class DoShowAllPartners extends Command<WarehouseManager> {
 
 	@Override
 	public void execute() throws CommandException {
-		Stream<Partner> partners = _receiver.getPartners().sorted(_receiver.partnerComparator());
+		// Note: Partners are already in order
+		Stream<Partner> partners = _receiver.getPartners();
 		for (var partner : streamIt(partners)) {
 			_display.addLine(_receiver.format(partner));
 		}
@@ -20,7 +20,8 @@ class DoShowAllProducts extends Command<WarehouseManager> {
 
 	@Override
 	public final void execute() throws CommandException {
-		Stream<Product> products = _receiver.getProducts().sorted(_receiver.productComparator());
+		// Note: Products are already in order
+		Stream<Product> products = _receiver.getProducts();
 		for (var product : streamIt(products)) {
 			_display.addLine(_receiver.format(product));
 		}
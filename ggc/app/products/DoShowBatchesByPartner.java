@@ -24,7 +24,7 @@ class DoShowBatchesByPartner extends Command<WarehouseManager> {
 		var partner = _receiver.getPartner(partnerId).orElseThrow(() -> new UnknownPartnerKeyException(partnerId));
 
 		// Then display them
-		ShowBatches.executeFilter(_receiver, _display, _receiver.batchFilterPartner(partner));
+		ShowBatches.execute(_receiver, _display, _receiver.getBatchesForPartner(partner));
 	}
 
 }
@@ -12,8 +12,12 @@ class ShowBatches {
 	/** Shows all batches from `receiver` to `display`, filtering using `predicate`. */
 	public static final void executeFilter(WarehouseManager receiver, Display display,
 			Predicate<? super Batch> predicate) {
-		Stream<Batch> batches = receiver.getBatches().filter(predicate).sorted(receiver.batchComparator());
-		for (var batch : streamIt(batches)) {
+		execute(receiver, display, receiver.getBatches().filter(predicate));
+	}
+
+	/** Shows all batches in `batches` to `display`, sorted with `receiver`'s batch comparator. */
+	public static final void execute(WarehouseManager receiver, Display display, Stream<Batch> batches) {
+		for (var batch : streamIt(batches.sorted(receiver.batchComparator()))) {
 			display.addLine(receiver.format(batch));
 		}
 
@@ -98,6 +98,9 @@ public class Batch implements Serializable, WarehouseFormattable {
 	public void takeQuantity(int quantity) {
 		_quantity -= quantity;
 		assert _quantity >= 0;
+
+		// Note: Keep our product's total quantity in sync
+		_product.takeQuantity(quantity);
 	}
 
 	/**
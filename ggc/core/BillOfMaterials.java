@@ -0,0 +1,82 @@
+package ggc.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bill of materials of a derived product.
+ *
+ * Flattens the recipe graph of a derived product into the list of all products that may be used to manufacture it,
+ * each product appearing only once, even if shared by multiple recipes.
+ */
+// Note: Package private because we don't need it outside of core
+class BillOfMaterials {
+	/** All products, with each product before all of the components of it's recipe */
+	private List<Product> _products;
+
+	/** All products, in the order they're first visited when going through the recipes depth-first */
+	private List<Product> _visitOrder;
+
+	/**
+	 * Creates the bill of materials of a product
+	 *
+	 * @param product
+	 *            The product
+	 */
+	BillOfMaterials(Product product) {
+		var postOrder = new ArrayList<Product>();
+		_visitOrder = new ArrayList<>();
+		visit(product, new HashSet<>(), postOrder);
+
+		// Note: Reversing the post order puts every product before it's components
+		Collections.reverse(postOrder);
+		_products = Collections.unmodifiableList(postOrder);
+		_visitOrder = Collections.unmodifiableList(_visitOrder);
+	}
+
+	/**
+	 * Visits a product and all of it's components depth-first
+	 *
+	 * @param product
+	 *            The product to visit
+	 * @param visited
+	 *            All products visited so far
+	 * @param postOrder
+	 *            All products whose components were all visited
+	 */
+	private void visit(Product product, Set<Product> visited, List<Product> postOrder) {
+		if (!visited.add(product)) {
+			return;
+		}
+
+		_visitOrder.add(product);
+		var derivedProduct = product.getAsDerived();
+		if (derivedProduct.isPresent()) {
+			for (var component : derivedProduct.get().getRecipe().getProducts()) {
+				visit(component, visited, postOrder);
+			}
+		}
+		postOrder.add(product);
+	}
+
+	/**
+	 * Retrieves all products, with each product before all of the components of it's recipe
+	 *
+	 * @return All products
+	 */
+	List<Product> getProducts() {
+		return _products;
+	}
+
+	/**
+	 * Retrieves all products, in the order they're first visited depth-first
+	 *
+	 * @return All products
+	 */
+	List<Product> getVisitOrder() {
+		return _visitOrder;
+	}
+}
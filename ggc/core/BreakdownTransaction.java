@@ -1,12 +1,17 @@
 package ggc.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import ggc.core.util.Pair;
 
 /** A breakdown transaction */
 public class BreakdownTransaction extends Transaction {
+	/** Serial number for serialization. */
+	// Note: The one computed for this class before it was declared, so that older files still load.
+	private static final long serialVersionUID = -7739961395084455409L;
+
 	/** The date this transaction took place */
 	private int _date;
 
@@ -71,6 +76,15 @@ public class BreakdownTransaction extends Transaction {
 		return Math.max(0, _baseCost);
 	}
 
+	/**
+	 * Retrieves all products created in this transaction
+	 * 
+	 * @return All products created, along with their quantities and total prices
+	 */
+	List<Pair<Product, Pair<Integer, Double>>> getProductsCreated() {
+		return Collections.unmodifiableList(_productsCreated);
+	}
+
 	@Override
 	public String format(WarehouseManager warehouseManager) {
 		var partner = getPartner();
@@ -9,12 +9,21 @@ import java.util.stream.Stream;
  * A product which is derived from other products
  */
 public class DerivedProduct extends Product {
+	/** Serial number for serialization. */
+	// Note: The one computed for this class before it was declared, so that older files still load.
+	private static final long serialVersionUID = -5114319484269327984L;
+
 	/** The recipe to create this product */
 	private Recipe _recipe;
 
 	/** Cost factor when creating this product from it's recipe */
 	private double _costFactor;
 
+	/** Bill of materials, built when first needed */
+	// Note: transient because it's redundant with the recipe
+	// Note: `volatile` as it's built by whichever thread first sells this product, and then used by all others
+	private transient volatile BillOfMaterials _billOfMaterials;
+
 	/**
 	 * Creates a new derived product
 	 * 
@@ -41,6 +50,20 @@ public class DerivedProduct extends Product {
 		return _recipe;
 	}
 
+	/**
+	 * Retrieves this product's bill of materials
+	 * 
+	 * @return The bill of materials to manufacture this product
+	 */
+	BillOfMaterials getBillOfMaterials() {
+		// Note: Recipes never change, so we only need to build it once
+		if (_billOfMaterials == null) {
+			_billOfMaterials = new BillOfMaterials(this);
+		}
+
+		return _billOfMaterials;
+	}
+
 	/**
 	 * Retrieves this product's cost factor
 	 * 
@@ -0,0 +1,155 @@
+package ggc.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Log of all notifications sent.
+ * 
+ * Instead of each partner receiving a copy of every notification, notifications are appended once to this log, and
+ * each partner keeps a cursor into it, marking the notifications they've yet to read. Notifications are dropped from
+ * the log once every cursor has moved past them.
+ */
+// Note: Package private because we don't need it outside of core
+class NotificationLog implements Serializable {
+	/** Serial number for serialization. */
+	private static final long serialVersionUID = 2026_10_17_12_00L;
+
+	/** All notifications, the ones before `_head` have been read by every cursor */
+	// Note: Read notifications are only dropped once they're half the list, so
+	//       that dropping them is amortized constant time.
+	private ArrayList<Notification> _notifications = new ArrayList<>();
+
+	/** Index of the first notification that hasn't been read by every cursor */
+	private int _head;
+
+	/** Sequence number of the notification at `_head` */
+	private long _firstSequence;
+
+	/** Number of cursors at each sequence number */
+	private TreeMap<Long, Integer> _cursors = new TreeMap<>();
+
+	/** Creates a new, empty, log */
+	NotificationLog() {
+	}
+
+	/**
+	 * Restores a log from it's unread notifications
+	 * 
+	 * @param firstSequence
+	 *            The sequence number of the first notification
+	 * @param notifications
+	 *            All notifications that haven't been read by every cursor
+	 * @param cursors
+	 *            All cursors into the log
+	 */
+	NotificationLog(long firstSequence, List<Notification> notifications, Iterable<Long> cursors) {
+		_firstSequence = firstSequence;
+		_notifications.addAll(notifications);
+		for (var cursor : cursors) {
+			assert cursor >= _firstSequence && cursor <= getEndSequence();
+			_cursors.merge(cursor, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Retrieves the sequence number of the first notification that hasn't been read by every cursor
+	 * 
+	 * @return The sequence number of the first notification
+	 */
+	long getFirstSequence() {
+		return _firstSequence;
+	}
+
+	/**
+	 * Retrieves all notifications that haven't been read by every cursor
+	 * 
+	 * @return All unread notifications, starting at the first sequence number
+	 */
+	List<Notification> getUnreadNotifications() {
+		return Collections.unmodifiableList(_notifications.subList(_head, _notifications.size()));
+	}
+
+	/**
+	 * Retrieves the sequence number after the last notification
+	 * 
+	 * @return The sequence number of the next notification appended
+	 */
+	long getEndSequence() {
+		return _firstSequence + _notifications.size() - _head;
+	}
+
+	/**
+	 * Appends a notification to the log
+	 * 
+	 * @param notification
+	 *            The notification to append
+	 */
+	void append(Notification notification) {
+		// If nobody would read the notification, don't store it
+		if (_cursors.isEmpty()) {
+			_firstSequence++;
+			return;
+		}
+
+		_notifications.add(notification);
+	}
+
+	/**
+	 * Adds a new cursor at the end of the log
+	 * 
+	 * @return The new cursor
+	 */
+	long addCursor() {
+		var cursor = getEndSequence();
+		_cursors.merge(cursor, 1, Integer::sum);
+		return cursor;
+	}
+
+	/**
+	 * Removes a cursor from the log
+	 * 
+	 * @param cursor
+	 *            The cursor to remove
+	 */
+	void removeCursor(long cursor) {
+		_cursors.computeIfPresent(cursor, (_cursor, count) -> count == 1 ? null : count - 1);
+		trim();
+	}
+
+	/**
+	 * Reads all notifications after a cursor and moves it to the end of the log
+	 * 
+	 * @param cursor
+	 *            The cursor to read from
+	 * @return All notifications after the cursor
+	 */
+	List<Notification> read(long cursor) {
+		assert cursor >= _firstSequence && cursor <= getEndSequence();
+
+		// Collect all notifications after the cursor
+		var start = _head + (int) (cursor - _firstSequence);
+		var notifications = new ArrayList<>(_notifications.subList(start, _notifications.size()));
+
+		// Then move the cursor to the end
+		removeCursor(cursor);
+		_cursors.merge(getEndSequence(), 1, Integer::sum);
+
+		return notifications;
+	}
+
+	/** Drops all notifications that every cursor has moved past */
+	private void trim() {
+		var minCursor = _cursors.isEmpty() ? getEndSequence() : _cursors.firstKey();
+		_head += (int) (minCursor - _firstSequence);
+		_firstSequence = minCursor;
+
+		if (_head > _notifications.size() / 2) {
+			_notifications.subList(0, _head).clear();
+			_head = 0;
+		}
+	}
+}
@@ -1,19 +1,35 @@
 package ggc.core;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import ggc.core.exception.BadEntryException;
 import ggc.core.exception.ParsingException;
-import ggc.core.util.Pair;
+import ggc.core.util.LineTokenizer;
 
 /**
  * File parser using the visitor partner.
  */
 // Note: Package private because we don't need it outside of core
 class Parser {
+	/** Minimum size of a file to parse it in parallel */
+	// Note: Overridable through the `parallelImportMinSize` property, so small files may be parsed in parallel
+	private static final long PARALLEL_MIN_FILE_SIZE = Long.getLong("parallelImportMinSize", 8 << 20);
+
+	/** Minimum size of each chunk parsed in parallel */
+	// Note: Overridable through the `parallelImportChunkSize` property, so small files may be split onto many chunks
+	private static final long PARALLEL_MIN_CHUNK_SIZE = Math.max(Long.getLong("parallelImportChunkSize", 1 << 20), 1);
+
+	/** Number of chunks per thread, so threads that finish early can pick up more */
+	private static final int PARALLEL_CHUNKS_PER_THREAD = 4;
+
 	/** Filename of the file we're parsing */
 	private String _fileName;
 
@@ -30,6 +46,8 @@ class Parser {
 	/**
 	 * Visits all lines in this file
 	 * 
+	 * Large files are parsed in parallel, but still visited in order, one line at a time.
+	 * 
 	 * @param visitor
 	 *            The visitor for each line
 	 * @throws IOException
@@ -40,12 +58,21 @@ class Parser {
 	 *             If the visitor throws any exception
 	 */
 	void visit(ParserVisitor visitor) throws IOException, BadEntryException, ParsingException {
-		// Open the reader
-		try (var reader = new BufferedReader(new FileReader(_fileName))) {
+		// Open the file
+		// Note: We tokenize the lines straight from the bytes read, so we don't create a string for each line and
+		//       field, only for the fields the visitor receives.
+		try (var channel = FileChannel.open(Path.of(_fileName), StandardOpenOption.READ)) {
+			// Note: Mapped buffers can't be larger than 2 GiB, so we parse anything larger on a single thread.
+			long fileSize = channel.size();
+			if (fileSize >= PARALLEL_MIN_FILE_SIZE && fileSize <= Integer.MAX_VALUE) {
+				visitParallel(channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize), visitor);
+				return;
+			}
+
 			// Then read and parse a line until we're at the end
-			String line;
-			while ((line = reader.readLine()) != null)
-				parseLine(line, visitor);
+			var tokenizer = new LineTokenizer(channel, '|');
+			while (tokenizer.nextLine())
+				parseLine(tokenizer, visitor);
 		}
 		// Wrap any other exceptions from the visitor in `ParsingException`.
 		catch (Exception e) {
@@ -53,11 +80,137 @@ class Parser {
 		}
 	}
 
+	/**
+	 * Visits all lines of a file in parallel
+	 * 
+	 * The file is split into chunks of whole lines, which are all parsed in parallel, and then visited in order,
+	 * as soon as each chunk, and all before it, are parsed.
+	 * 
+	 * @param contents
+	 *            The contents of the file
+	 * @param visitor
+	 *            The visitor for each line
+	 * @throws Exception
+	 *             If any line was malformed, or the visitor throws any exception
+	 */
+	private void visitParallel(ByteBuffer contents, ParserVisitor visitor) throws Exception {
+		// Parse all chunks in parallel
+		var pool = ForkJoinPool.commonPool();
+		var chunks = new ArrayList<ForkJoinTask<List<ParsedEntry>>>();
+		for (var chunk : splitChunks(contents, pool.getParallelism() * PARALLEL_CHUNKS_PER_THREAD)) {
+			chunks.add(pool.submit(() -> parseChunk(chunk)));
+		}
+
+		// Then visit them all in order
+		// Note: Any errors while parsing are only thrown once we get to them, so that all lines before
+		//       them are visited, just like when parsing a single line at a time.
+		try {
+			for (var chunk : chunks) {
+				for (var entry : chunk.join()) {
+					entry.visit(visitor);
+				}
+			}
+		} finally {
+			chunks.forEach(chunk -> chunk.cancel(false));
+		}
+	}
+
+	/**
+	 * Splits a file into chunks of whole lines
+	 * 
+	 * @param contents
+	 *            The contents of the file
+	 * @param maxChunks
+	 *            The maximum number of chunks
+	 * @return All chunks, in order
+	 */
+	private static List<ByteBuffer> splitChunks(ByteBuffer contents, int maxChunks) {
+		int chunkSize = (int) Math.max(PARALLEL_MIN_CHUNK_SIZE, contents.limit() / Math.max(maxChunks, 1));
+
+		var chunks = new ArrayList<ByteBuffer>();
+		int chunkStart = 0;
+		while (chunkStart < contents.limit()) {
+			// Find the end of the line the chunk ends in, including a `\r\n` as a whole
+			int chunkEnd = (int) Math.min((long) chunkStart + chunkSize, contents.limit());
+			while (chunkEnd < contents.limit() && contents.get(chunkEnd - 1) != '\n'
+					&& contents.get(chunkEnd - 1) != '\r') {
+				chunkEnd++;
+			}
+			if (chunkEnd < contents.limit() && contents.get(chunkEnd - 1) == '\r' && contents.get(chunkEnd) == '\n') {
+				chunkEnd++;
+			}
+
+			chunks.add(contents.slice(chunkStart, chunkEnd - chunkStart));
+			chunkStart = chunkEnd;
+		}
+
+		return chunks;
+	}
+
+	/**
+	 * Parses all lines of a chunk
+	 * 
+	 * @param chunk
+	 *            The chunk to parse
+	 * @return All entries of the chunk, ending on an entry that throws if any line was malformed
+	 */
+	private List<ParsedEntry> parseChunk(ByteBuffer chunk) {
+		var recorder = new RecordingParserVisitor();
+		try {
+			var tokenizer = new LineTokenizer(chunk, '|');
+			while (tokenizer.nextLine())
+				parseLine(tokenizer, recorder);
+		} catch (Exception e) {
+			recorder._entries.add(visitor -> {
+				throw e;
+			});
+		}
+
+		return recorder._entries;
+	}
+
+	/** Entry parsed from a line, to visit later */
+	@FunctionalInterface
+	private interface ParsedEntry {
+		/**
+		 * Visits this entry
+		 * 
+		 * @param visitor
+		 *            The visitor
+		 * @throws Exception
+		 *             If the visitor throws any exception
+		 */
+		void visit(ParserVisitor visitor) throws Exception;
+	}
+
+	/** Visitor that records all entries visited, to visit them later */
+	private static class RecordingParserVisitor implements ParserVisitor {
+		/** All entries visited, in order */
+		private List<ParsedEntry> _entries = new ArrayList<>();
+
+		@Override
+		public void visitPartner(String id, String name, String address) {
+			_entries.add(visitor -> visitor.visitPartner(id, name, address));
+		}
+
+		@Override
+		public void visitBatch(String productId, String partnerId, int quantity, double unitPrice) {
+			_entries.add(visitor -> visitor.visitBatch(productId, partnerId, quantity, unitPrice));
+		}
+
+		@Override
+		public void visitDerivedBatch(String productId, String partnerId, int quantity, double unitPrice,
+				double costFactor, String[] recipeProductIds, int[] recipeQuantities) {
+			_entries.add(visitor -> visitor.visitDerivedBatch(productId, partnerId, quantity, unitPrice, costFactor,
+					recipeProductIds, recipeQuantities));
+		}
+	}
+
 	/**
 	 * Parses a line
 	 * 
 	 * @param line
-	 *            The line to parse
+	 *            The tokenizer, at the line to parse
 	 * @param visitor
 	 *            The visitor to parse
 	 * @throws BadEntryException
@@ -66,28 +219,19 @@ class Parser {
 	 *             If the visitor throws any exception
 	 * 
 	 */
-	private void parseLine(String line, ParserVisitor visitor) throws BadEntryException, Exception {
-		String[] args = line.split("\\|");
-
-		if (args.length < 2) {
+	private void parseLine(LineTokenizer line, ParserVisitor visitor) throws BadEntryException, Exception {
+		if (line.getFieldCount() < 2) {
 			throw new BadEntryException("Missing `|` in entry");
 		}
 
-		switch (args[0]) {
-			case "PARTNER":
-				parsePartner(args, visitor);
-				break;
-
-			case "BATCH_S":
-				parseBatch(args, visitor);
-				break;
-
-			case "BATCH_M":
-				parseDerivedBatch(args, visitor);
-				break;
-
-			default:
-				throw new BadEntryException("Unknown entry: " + args[0]);
+		if (line.fieldEquals(0, "PARTNER")) {
+			parsePartner(line, visitor);
+		} else if (line.fieldEquals(0, "BATCH_S")) {
+			parseBatch(line, visitor);
+		} else if (line.fieldEquals(0, "BATCH_M")) {
+			parseDerivedBatch(line, visitor);
+		} else {
+			throw new BadEntryException("Unknown entry: " + line.getField(0));
 		}
 	}
 
@@ -95,7 +239,7 @@ class Parser {
 	 * Parses a partner
 	 * 
 	 * @param args
-	 *            The arguments to parse
+	 *            The tokenizer, at the arguments to parse
 	 * @param visitor
 	 *            The visitor to parse
 	 * @throws BadEntryException
@@ -104,14 +248,14 @@ class Parser {
 	 *             If the visitor throws any exception
 	 * 
 	 */
-	private void parsePartner(String[] args, ParserVisitor visitor) throws BadEntryException, Exception {
-		if (args.length != 4) {
-			throw new BadEntryException("Expected 4 arguments, found " + args.length);
+	private void parsePartner(LineTokenizer args, ParserVisitor visitor) throws BadEntryException, Exception {
+		if (args.getFieldCount() != 4) {
+			throw new BadEntryException("Expected 4 arguments, found " + args.getFieldCount());
 		}
 
-		String id = args[1];
-		String name = args[2];
-		String address = args[3];
+		String id = args.getSymbol(1);
+		String name = args.getField(2);
+		String address = args.getField(3);
 
 		visitor.visitPartner(id, name, address);
 	}
@@ -120,7 +264,7 @@ class Parser {
 	 * Parses a batch
 	 * 
 	 * @param args
-	 *            The arguments to parse
+	 *            The tokenizer, at the arguments to parse
 	 * @param visitor
 	 *            The visitor to parse
 	 * @throws BadEntryException
@@ -129,16 +273,16 @@ class Parser {
 	 *             If the visitor throws any exception
 	 * 
 	 */
-	private void parseBatch(String[] args, ParserVisitor visitor)
+	private void parseBatch(LineTokenizer args, ParserVisitor visitor)
 			throws BadEntryException, Exception, NumberFormatException {
-		if (args.length != 5) {
-			throw new BadEntryException("Expected 5 arguments, found " + args.length);
+		if (args.getFieldCount() != 5) {
+			throw new BadEntryException("Expected 5 arguments, found " + args.getFieldCount());
 		}
 
-		String productId = args[1];
-		String partnerId = args[2];
-		double unitPrice = Integer.parseInt(args[3]);
-		int quantity = Integer.parseInt(args[4]);
+		String productId = args.getSymbol(1);
+		String partnerId = args.getSymbol(2);
+		double unitPrice = args.getIntField(3);
+		int quantity = args.getIntField(4);
 
 		visitor.visitBatch(productId, partnerId, quantity, unitPrice);
 	}
@@ -147,7 +291,7 @@ class Parser {
 	 * Parses a batch of derived products
 	 * 
 	 * @param args
-	 *            The arguments to parse
+	 *            The tokenizer, at the arguments to parse
 	 * @param visitor
 	 *            The visitor to parse
 	 * @throws BadEntryException
@@ -156,26 +300,36 @@ class Parser {
 	 *             If the visitor throws any exception
 	 * 
 	 */
-	private void parseDerivedBatch(String[] args, ParserVisitor visitor)
+	private void parseDerivedBatch(LineTokenizer args, ParserVisitor visitor)
 			throws BadEntryException, Exception, NumberFormatException {
-		if (args.length != 7) {
-			throw new BadEntryException("Expected 7 arguments, found " + args.length);
+		if (args.getFieldCount() != 7) {
+			throw new BadEntryException("Expected 7 arguments, found " + args.getFieldCount());
 		}
 
-		String productId = args[1];
-		String partnerId = args[2];
-		double unitPrice = Integer.parseInt(args[3]);
-		int quantity = Integer.parseInt(args[4]);
-		double costFactor = Double.parseDouble(args[5]);
-		String allProductQuantities = args[6];
+		String productId = args.getSymbol(1);
+		String partnerId = args.getSymbol(2);
+		double unitPrice = args.getIntField(3);
+		int quantity = args.getIntField(4);
+		double costFactor = args.getDoubleField(5);
 
 		// Get all recipe products/quantities by separating on `#`s, then separate
-		// them to parse the quantities and collect them into a map.
-		var productQuantities = Arrays.stream(allProductQuantities.split("#")) //
-				.map(recipeProduct -> recipeProduct.split(":")) //
-				.map(Pair::fromArray) //
-				.map(pair -> pair.mapRight(Integer::parseInt));
+		// each on `:`, parsing the product ids and quantities straight from the line.
+		int componentsStart = args.splitField(6, '#');
+		int componentsCount = args.getFieldCount() - componentsStart;
+		var recipeProductIds = new String[componentsCount];
+		var recipeQuantities = new int[componentsCount];
+		for (int componentIdx = 0; componentIdx < componentsCount; componentIdx++) {
+			int componentFieldIdx = componentsStart + componentIdx;
+			int fieldIdx = args.splitField(componentFieldIdx, ':');
+			if (args.getFieldCount() - fieldIdx != 2) {
+				throw new BadEntryException(
+						"Expected `product:quantity` in recipe, found " + args.getField(componentFieldIdx));
+			}
+			recipeProductIds[componentIdx] = args.getSymbol(fieldIdx);
+			recipeQuantities[componentIdx] = args.getIntField(fieldIdx + 1);
+		}
 
-		visitor.visitDerivedBatch(productId, partnerId, quantity, unitPrice, costFactor, productQuantities);
+		visitor.visitDerivedBatch(productId, partnerId, quantity, unitPrice, costFactor, recipeProductIds,
+				recipeQuantities);
 	}
 }
@@ -1,8 +1,5 @@
 package ggc.core;
 
-import java.util.stream.Stream;
-import ggc.core.util.Pair;
-
 /** Parser visitor */
 // Note: Package private because we don't need it outside of core
 interface ParserVisitor {
@@ -49,11 +46,13 @@ interface ParserVisitor {
 	 *            The per-unit price of the batch
 	 * @param costFactor
 	 *            The cost factor of the product
-	 * @param recipeProductIdQuantities
-	 *            The quantities of each product id for the recipe
+	 * @param recipeProductIds
+	 *            The id of each product of the recipe
+	 * @param recipeQuantities
+	 *            The quantity of each product of the recipe, in the same order as their ids
 	 * @throws Exception
 	 *             On any error
 	 */
 	void visitDerivedBatch(String productId, String partnerId, int quantity, double unitPrice, double costFactor,
-			Stream<Pair<String, Integer>> recipeProductIdQuantities) throws Exception;
+			String[] recipeProductIds, int[] recipeQuantities) throws Exception;
 }
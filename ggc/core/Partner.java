@@ -5,8 +5,10 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import ggc.core.partnerstatus.NormalPartnerStatus;
+import ggc.core.util.SortKey;
 
 /**
  * A partner.
@@ -20,6 +22,10 @@ public class Partner implements Serializable, WarehouseFormattable {
 	/** Id of the partner */
 	private String _id;
 
+	/** Collation key of our id */
+	// Note: transient because it's either restored from the index when reading, or rebuilt when first needed.
+	private transient SortKey _collationKey;
+
 	/** Name of the partner */
 	private String _name;
 
@@ -41,9 +47,22 @@ public class Partner implements Serializable, WarehouseFormattable {
 	/** All breakdown transactions */
 	private List<BreakdownTransaction> _breakdownTransactions;
 
-	/** All pending notifications */
+	/** Total cost of all purchases */
+	// Note: Kept so we don't need to go through all purchases to format this partner
+	private double _totalPurchases;
+
+	/** Total base cost of all sales */
+	private double _totalSales;
+
+	/** Total paid cost of all sales */
+	private double _totalSalesPaid;
+
+	/** Pending notifications already read from the warehouse's notification log */
 	private List<Notification> _pendingNotifications;
 
+	/** Cursor into the warehouse's notification log, before all notifications we haven't read */
+	private long _notificationCursor;
+
 	/** Blacklisted product notifications */
 	private Set<Product> _blacklistedProductNotifications;
 
@@ -56,17 +75,19 @@ public class Partner implements Serializable, WarehouseFormattable {
 	 *            Name of the partner
 	 * @param address
 	 *            Address of the partner
+	 * @param transactions
+	 *            All transactions of the warehouse, which the partner's transactions are retrieved from
 	 */
 	// Note: Package private to ensure we don't construct it outside of `core`.
-	Partner(String id, String name, String address) {
+	Partner(String id, String name, String address, List<Transaction> transactions) {
 		_name = name;
 		_address = address;
 		_id = id;
 		_status = new NormalPartnerStatus();
 		_points = 0.0;
-		_purchases = new ArrayList<>();
-		_sales = new ArrayList<>();
-		_breakdownTransactions = new ArrayList<>();
+		_purchases = new TransactionList<>(Purchase.class, transactions, new int[0]);
+		_sales = new TransactionList<>(Sale.class, transactions, new int[0]);
+		_breakdownTransactions = new TransactionList<>(BreakdownTransaction.class, transactions, new int[0]);
 		_pendingNotifications = new ArrayList<>();
 		_blacklistedProductNotifications = new HashSet<>();
 	}
@@ -80,6 +101,29 @@ public class Partner implements Serializable, WarehouseFormattable {
 		return _id;
 	}
 
+	/**
+	 * Retrieves the collation key of this partner's id
+	 * 
+	 * @return The collation key of the id of this partner
+	 */
+	SortKey getCollationKey() {
+		if (_collationKey == null) {
+			_collationKey = Warehouse.getCollationKey(_id);
+		}
+
+		return _collationKey;
+	}
+
+	/**
+	 * Restores the collation key of this partner's id, as previously retrieved by `getCollationKey`
+	 * 
+	 * @param collationKey
+	 *            The collation key of the id of this partner
+	 */
+	void restoreCollationKey(SortKey collationKey) {
+		_collationKey = collationKey;
+	}
+
 	/**
 	 * Retrieves this partner's name
 	 * 
@@ -116,6 +160,65 @@ public class Partner implements Serializable, WarehouseFormattable {
 		return _points;
 	}
 
+	/**
+	 * Restores this partner's status and points, without checking for promotion
+	 * 
+	 * @param status
+	 *            The status of this partner
+	 * @param points
+	 *            The points of this partner
+	 */
+	void restoreStatus(PartnerStatus status, double points) {
+		_status = status;
+		_points = points;
+	}
+
+	/**
+	 * Restores all of this partner's transactions, without changing their totals
+	 * 
+	 * @param purchases
+	 *            All purchases
+	 * @param sales
+	 *            All sales
+	 * @param breakdownTransactions
+	 *            All breakdown transactions
+	 */
+	void restoreTransactions(List<Purchase> purchases, List<Sale> sales,
+			List<BreakdownTransaction> breakdownTransactions) {
+		_purchases = purchases;
+		_sales = sales;
+		_breakdownTransactions = breakdownTransactions;
+	}
+
+	/**
+	 * Restores the totals of this partner's transactions
+	 * 
+	 * @param totalPurchases
+	 *            The total cost of all purchases
+	 * @param totalSales
+	 *            The total base cost of all sales
+	 * @param totalSalesPaid
+	 *            The total paid cost of all sales
+	 */
+	void restoreTotals(double totalPurchases, double totalSales, double totalSalesPaid) {
+		_totalPurchases = totalPurchases;
+		_totalSales = totalSales;
+		_totalSalesPaid = totalSalesPaid;
+	}
+
+	/** Recomputes the totals of this partner's transactions from the transactions themselves */
+	// Note: Used for partners saved before the totals were kept. Can't be done while deserializing
+	//       the partner, as it's transactions may not have been fully deserialized yet.
+	void recomputeTotals() {
+		_totalPurchases = _purchases.stream().mapToDouble(Purchase::getTotalCost).sum();
+		_totalSales = 0.0;
+		_totalSalesPaid = 0.0;
+		for (var sale : _sales) {
+			_totalSales += sale.getBaseCost();
+			_totalSalesPaid += sale.getPaidCost().orElse(0.0);
+		}
+	}
+
 	/** Attempts to promote this partner, if they have enough points */
 	private void tryPromotePartner() {
 		// Keep promoting until we can't promote anymore
@@ -145,6 +248,25 @@ public class Partner implements Serializable, WarehouseFormattable {
 	 */
 	void addPurchase(Purchase purchase) {
 		_purchases.add(purchase);
+		_totalPurchases += purchase.getTotalCost();
+	}
+
+	/**
+	 * Retrieves the ids of this partner's purchases
+	 * 
+	 * @return The ids of the purchases of this partner
+	 */
+	IntStream getPurchaseIds() {
+		return TransactionList.getIds(_purchases);
+	}
+
+	/**
+	 * Retrieves the total cost of this partner's purchases
+	 * 
+	 * @return The total cost of all purchases
+	 */
+	double getTotalPurchases() {
+		return _totalPurchases;
 	}
 
 	/**
@@ -156,6 +278,33 @@ public class Partner implements Serializable, WarehouseFormattable {
 		return _sales.stream();
 	}
 
+	/**
+	 * Retrieves the ids of this partner's sales
+	 * 
+	 * @return The ids of the sales of this partner
+	 */
+	IntStream getSaleIds() {
+		return TransactionList.getIds(_sales);
+	}
+
+	/**
+	 * Retrieves the total base cost of this partner's sales
+	 * 
+	 * @return The total base cost of all sales
+	 */
+	double getTotalSales() {
+		return _totalSales;
+	}
+
+	/**
+	 * Retrieves the total paid cost of this partner's sales
+	 * 
+	 * @return The total paid cost of all sales
+	 */
+	double getTotalSalesPaid() {
+		return _totalSalesPaid;
+	}
+
 	/**
 	 * Retrieves this partner's breakdown transactions
 	 * 
@@ -165,6 +314,15 @@ public class Partner implements Serializable, WarehouseFormattable {
 		return _breakdownTransactions.stream();
 	}
 
+	/**
+	 * Retrieves the ids of this partner's breakdown transactions
+	 * 
+	 * @return The ids of the breakdown transactions of this partner
+	 */
+	IntStream getBreakdownTransactionIds() {
+		return TransactionList.getIds(_breakdownTransactions);
+	}
+
 	/**
 	 * Adds a sale to this partner
 	 * 
@@ -173,6 +331,8 @@ public class Partner implements Serializable, WarehouseFormattable {
 	 */
 	void addSale(Sale sale) {
 		_sales.add(sale);
+		_totalSales += sale.getBaseCost();
+		_totalSalesPaid += sale.getPaidCost().orElse(0.0);
 	}
 
 	/**
@@ -202,6 +362,7 @@ public class Partner implements Serializable, WarehouseFormattable {
 	double paySale(Sale sale, int date) {
 		// Pay and get the paid amount
 		var paidAmount = sale.pay(date);
+		_totalSalesPaid += paidAmount;
 
 		// Add the points and check for promotion if on time, else demote
 		if (date < sale.getPaymentDeadline()) {
@@ -216,6 +377,25 @@ public class Partner implements Serializable, WarehouseFormattable {
 		return paidAmount;
 	}
 
+	/**
+	 * Retrieves this partner's notification cursor
+	 * 
+	 * @return The cursor into the warehouse's notification log
+	 */
+	long getNotificationCursor() {
+		return _notificationCursor;
+	}
+
+	/**
+	 * Sets this partner's notification cursor
+	 * 
+	 * @param notificationCursor
+	 *            The new cursor into the warehouse's notification log
+	 */
+	void setNotificationCursor(long notificationCursor) {
+		_notificationCursor = notificationCursor;
+	}
+
 	/**
 	 * Adds a notification
 	 * 
@@ -226,6 +406,15 @@ public class Partner implements Serializable, WarehouseFormattable {
 		_pendingNotifications.add(notification);
 	}
 
+	/**
+	 * Retrieves all pending notifications already read from the warehouse's notification log
+	 * 
+	 * @return All pending notifications
+	 */
+	Stream<Notification> getPendingNotifications() {
+		return _pendingNotifications.stream();
+	}
+
 	/**
 	 * Clears all pending notifications and returns them
 	 * 
@@ -261,17 +450,19 @@ public class Partner implements Serializable, WarehouseFormattable {
 		return _blacklistedProductNotifications.contains(product);
 	}
 
+	/**
+	 * Retrieves all products with blacklisted notifications
+	 * 
+	 * @return All blacklisted products
+	 */
+	Stream<Product> getBlacklistedProductNotifications() {
+		return _blacklistedProductNotifications.stream();
+	}
+
 	@Override
 	public String format(WarehouseManager warehouseManager) {
-		double totalPurchases = _purchases.stream().mapToDouble(Purchase::getTotalCost).sum();
-		double totalSales = 0.0;
-		double totalSalesPaid = 0.0;
-		for (var sale : _sales) {
-			totalSales += sale.getBaseCost();
-			totalSalesPaid += sale.getPaidCost().orElse(0.0);
-		}
-
 		return String.format("%s|%s|%s|%s|%d|%d|%d|%d", _id, _name, _address, _status.format(warehouseManager),
-				Math.round(_points), Math.round(totalPurchases), Math.round(totalSales), Math.round(totalSalesPaid));
+				Math.round(_points), Math.round(_totalPurchases), Math.round(_totalSales),
+				Math.round(_totalSalesPaid));
 	}
 }
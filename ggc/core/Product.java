@@ -7,6 +7,7 @@ import java.io.Serializable;
 import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.stream.Stream;
+import ggc.core.util.SortKey;
 import static ggc.core.util.StreamIterator.streamIt;
 
 /**
@@ -24,6 +25,10 @@ public class Product implements Serializable, WarehouseFormattable {
 	/** Id of this product */
 	private String _id;
 
+	/** Collation key of our id */
+	// Note: transient because it's either restored from the index when reading, or rebuilt when first needed.
+	private transient SortKey _collationKey;
+
 	/** Min price this product has been at */
 	// Note: transient because we can't [de]serialize an optional
 	private transient OptionalDouble _minPrice = OptionalDouble.empty();
@@ -32,6 +37,14 @@ public class Product implements Serializable, WarehouseFormattable {
 	// Note: transient because we can't [de]serialize an optional
 	private transient OptionalDouble _maxPrice = OptionalDouble.empty();
 
+	/**
+	 * Total quantity of this product across all of it's batches.
+	 * 
+	 * Kept up to date by the warehouse whenever a batch is inserted or has quantity taken from it.
+	 */
+	// Note: transient because it's redundant with the batches, so the warehouse recomputes it when reading.
+	private transient int _quantity;
+
 	/**
 	 * Override for serialization to write our transient fields
 	 * 
@@ -89,6 +102,29 @@ public class Product implements Serializable, WarehouseFormattable {
 		return _id;
 	}
 
+	/**
+	 * Retrieves the collation key of this product's id
+	 * 
+	 * @return The collation key of the id of this product
+	 */
+	SortKey getCollationKey() {
+		if (_collationKey == null) {
+			_collationKey = Warehouse.getCollationKey(_id);
+		}
+
+		return _collationKey;
+	}
+
+	/**
+	 * Restores the collation key of this product's id, as previously retrieved by `getCollationKey`
+	 * 
+	 * @param collationKey
+	 *            The collation key of the id of this product
+	 */
+	void restoreCollationKey(SortKey collationKey) {
+		_collationKey = collationKey;
+	}
+
 	/**
 	 * Retrieves this product's min price
 	 * 
@@ -129,6 +165,37 @@ public class Product implements Serializable, WarehouseFormattable {
 		_maxPrice = OptionalDouble.of(maxPrice);
 	}
 
+	/**
+	 * Retrieves this product's total quantity
+	 * 
+	 * @return The quantity of this product in stock
+	 */
+	int getQuantity() {
+		return _quantity;
+	}
+
+	/**
+	 * Adds `quantity` to this product's total quantity
+	 * 
+	 * @param quantity
+	 *            The quantity of product to add
+	 */
+	void addQuantity(int quantity) {
+		_quantity += quantity;
+		assert _quantity >= 0;
+	}
+
+	/**
+	 * Takes `quantity` from this product's total quantity
+	 * 
+	 * @param quantity
+	 *            The quantity of product to take
+	 */
+	void takeQuantity(int quantity) {
+		_quantity -= quantity;
+		assert _quantity >= 0;
+	}
+
 	/**
 	 * Attempts to downcast this product to a derived one.
 	 * 
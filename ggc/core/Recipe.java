@@ -1,9 +1,11 @@
 package ggc.core;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -46,6 +48,47 @@ public class Recipe implements Serializable, WarehouseFormattable {
 		return new Recipe(productQuantities);
 	}
 
+	/**
+	 * Creates a new recipe from product ids
+	 * 
+	 * @param productIds
+	 *            The id of each product
+	 * @param quantities
+	 *            The quantity of each product, in the same order as their ids
+	 * @param productGetter
+	 *            A getter for products given their IDs.
+	 * @return The recipe
+	 * @throws UnknownProductIdException
+	 *             If a product didn't exist
+	 */
+	// Note: Package private to ensure we don't construct it outside of `core`.
+	static Recipe fromProductIds(String[] productIds, int[] quantities,
+			Function<String, Optional<Product>> productGetter) throws UnknownProductIdException {
+		assert productIds.length == quantities.length;
+		var productQuantities = new LinkedHashMap<Product, Integer>();
+		for (int productIdx = 0; productIdx < productIds.length; productIdx++) {
+			var product = productGetter.apply(productIds[productIdx]);
+			if (product.isEmpty()) {
+				throw new UnknownProductIdException(productIds[productIdx]);
+			}
+			productQuantities.put(product.get(), quantities[productIdx]);
+		}
+
+		return new Recipe(productQuantities);
+	}
+
+	/**
+	 * Creates a new recipe from it's product quantities
+	 * 
+	 * @param productQuantities
+	 *            The quantities for each product, in order
+	 * @return The recipe
+	 */
+	// Note: Package private to ensure we don't construct it outside of `core`.
+	static Recipe fromProducts(Map<Product, Integer> productQuantities) {
+		return new Recipe(new LinkedHashMap<>(productQuantities));
+	}
+
 	/**
 	 * Creates a recipe from it's product quantities
 	 * 
@@ -65,6 +108,26 @@ public class Recipe implements Serializable, WarehouseFormattable {
 		return _productQuantities.entrySet().stream().map(Pair::fromMapEntry);
 	}
 
+	/**
+	 * Retrieves all products of this recipe
+	 * 
+	 * @return The products of this recipe, in order
+	 */
+	Set<Product> getProducts() {
+		return Collections.unmodifiableSet(_productQuantities.keySet());
+	}
+
+	/**
+	 * Retrieves the quantity of a product in this recipe
+	 * 
+	 * @param product
+	 *            The product
+	 * @return The quantity of the product, or 0 if it's not in this recipe
+	 */
+	int getProductQuantity(Product product) {
+		return _productQuantities.getOrDefault(product, 0);
+	}
+
 	@Override
 	public String format(WarehouseManager warehouseManager) {
 		return _productQuantities.entrySet().stream()
@@ -13,6 +13,10 @@ import java.util.OptionalInt;
  * more, if not directly available.
  */
 public class Sale extends Transaction {
+	/** Serial number for serialization. */
+	// Note: The one computed for this class before it was declared, so that older files still load.
+	private static final long serialVersionUID = 4160782777240504698L;
+
 	/** Deadline for the payment of this sale */
 	private int _paymentDeadline;
 
@@ -115,6 +119,29 @@ public class Sale extends Transaction {
 		return _paidCost;
 	}
 
+	/**
+	 * Retrieves the date this sale was paid at
+	 * 
+	 * @return The payment date, if paid
+	 */
+	OptionalInt getPaymentDate() {
+		return _paymentDate;
+	}
+
+	/**
+	 * Restores this sale as paid, without affecting it's partner
+	 * 
+	 * @param paymentDate
+	 *            The date this sale was paid at
+	 * @param paidCost
+	 *            The amount paid
+	 */
+	void restorePayment(int paymentDate, double paidCost) {
+		assert !isPaid();
+		_paymentDate = OptionalInt.of(paymentDate);
+		_paidCost = OptionalDouble.of(paidCost);
+	}
+
 	/**
 	 * Retrieves the total cost, if paid on `date`.
 	 * 
@@ -0,0 +1,181 @@
+package ggc.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ggc.core.exception.InsufficientProductsException;
+import ggc.core.util.Pair;
+
+/**
+ * Plan for supplying a quantity of a product.
+ *
+ * Goes once through the bill of materials of the product, deciding how much of each product is taken from stock and
+ * how much is manufactured from it's recipe. The demand of products shared by multiple recipes is summed before it's
+ * decided, so each product is only visited once, but the quantity each recipe needs is kept, so each recipe may be
+ * charged for, and reported as lacking, what it needs on it's own.
+ */
+// Note: Package private because we don't need it outside of core
+class SupplyPlan {
+	/** The product being supplied */
+	private Product _product;
+
+	/** All products involved, with each product before all of it's components */
+	private List<Product> _products;
+
+	/** Total quantity needed of each product */
+	private Map<Product, Integer> _demand = new HashMap<>();
+
+	/** Quantity needed of each product by each recipe using it, in the order the recipes are visited depth-first */
+	private Map<Product, List<Pair<Product, Integer>>> _claims = new HashMap<>();
+
+	/** Quantity taken from stock of each product */
+	private Map<Product, Integer> _taken = new HashMap<>();
+
+	/** Quantity manufactured of each product */
+	private Map<Product, Integer> _manufactured = new HashMap<>();
+
+	/**
+	 * Creates a plan to supply `quantity` of `product`
+	 *
+	 * @param product
+	 *            The product to supply
+	 * @param quantity
+	 *            The quantity to supply
+	 * @throws InsufficientProductsException
+	 *             If there isn't enough of the product or it's components
+	 */
+	SupplyPlan(Product product, int quantity) throws InsufficientProductsException {
+		_product = product;
+
+		// If we have enough in stock, we don't need to go through the recipe
+		if (product.getQuantity() >= quantity || product.getAsDerived().isEmpty()) {
+			_products = List.of(product);
+		} else {
+			_products = product.getAsDerived().get().getBillOfMaterials().getProducts();
+		}
+
+		// Go through each product, after all products that need it
+		_demand.put(product, quantity);
+		for (var curProduct : _products) {
+			int demand = _demand.getOrDefault(curProduct, 0);
+			int taken = Math.min(demand, curProduct.getQuantity());
+			_taken.put(curProduct, taken);
+
+			// If we don't have enough, add the remaining to the demand of our components
+			int remaining = demand - taken;
+			var derivedProduct = curProduct.getAsDerived();
+			if (remaining == 0 || derivedProduct.isEmpty()) {
+				continue;
+			}
+
+			_manufactured.put(curProduct, remaining);
+			var recipe = derivedProduct.get().getRecipe();
+			for (var component : recipe.getProducts()) {
+				int componentQuantity = remaining * recipe.getProductQuantity(component);
+				_demand.merge(component, componentQuantity, Integer::sum);
+				_claims.computeIfAbsent(component, _component -> new ArrayList<>())
+						.add(new Pair<>(curProduct, componentQuantity));
+			}
+		}
+
+		// Then order the recipes using each product depth-first, as they'd take it when going through each recipe
+		// one by one, so the ones visited first take the cheapest units
+		var visitOrder = _products.size() == 1 ? _products
+				: product.getAsDerived().get().getBillOfMaterials().getVisitOrder();
+		var visitIdxs = new HashMap<Product, Integer>();
+		for (int productIdx = 0; productIdx < visitOrder.size(); productIdx++) {
+			visitIdxs.put(visitOrder.get(productIdx), productIdx);
+		}
+		for (var claims : _claims.values()) {
+			claims.sort(Comparator.comparingInt(claim -> visitIdxs.get(claim.getLhs())));
+		}
+
+		// Then check if any simple product is missing
+		// Note: We check in depth-first order so we report the same product
+		//       as we would when going through each recipe one by one.
+		for (var curProduct : visitOrder) {
+			int demand = _demand.getOrDefault(curProduct, 0);
+			if (curProduct.getAsDerived().isEmpty() && _taken.get(curProduct) < demand) {
+				throw insufficientProducts(curProduct, demand);
+			}
+		}
+	}
+
+	/**
+	 * Creates the exception for a simple product without enough stock, reporting the first recipe that lacks it
+	 *
+	 * @param product
+	 *            The product
+	 * @param demand
+	 *            The total quantity needed of the product
+	 * @return The exception
+	 */
+	// Note: Recipes take from stock in the order they're visited, so the one lacking is the first one
+	//       that needs more than the recipes before it left over.
+	private InsufficientProductsException insufficientProducts(Product product, int demand) {
+		int available = product.getQuantity();
+		for (var claim : getClaims(product)) {
+			if (claim.getRhs() > available) {
+				return new InsufficientProductsException(product.getId(), claim.getRhs(), available);
+			}
+			available -= claim.getRhs();
+		}
+
+		// Note: Only the product being supplied isn't needed by any recipe
+		return new InsufficientProductsException(product.getId(), demand, product.getQuantity());
+	}
+
+	/**
+	 * Retrieves the product being supplied
+	 *
+	 * @return The product
+	 */
+	Product getProduct() {
+		return _product;
+	}
+
+	/**
+	 * Retrieves all products involved, with each product before all of it's components
+	 *
+	 * @return All products
+	 */
+	List<Product> getProducts() {
+		return _products;
+	}
+
+	/**
+	 * Retrieves the quantity needed of a product by each recipe using it, in the order the recipes are visited
+	 * depth-first
+	 *
+	 * @param product
+	 *            The product
+	 * @return Each product whose recipe uses it, along with the quantity needed
+	 */
+	List<Pair<Product, Integer>> getClaims(Product product) {
+		return _claims.getOrDefault(product, List.of());
+	}
+
+	/**
+	 * Retrieves the quantity to take from stock of a product
+	 *
+	 * @param product
+	 *            The product
+	 * @return The quantity to take
+	 */
+	int getTakenQuantity(Product product) {
+		return _taken.getOrDefault(product, 0);
+	}
+
+	/**
+	 * Retrieves the quantity to manufacture of a product
+	 *
+	 * @param product
+	 *            The product
+	 * @return The quantity to manufacture
+	 */
+	int getManufacturedQuantity(Product product) {
+		return _manufactured.getOrDefault(product, 0);
+	}
+}
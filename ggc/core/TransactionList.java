@@ -0,0 +1,108 @@
+package ggc.core;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * List of transactions, by their ids.
+ * 
+ * Each transaction is only retrieved from all of the warehouse's transactions when accessed, so that a partner's
+ * transactions aren't decoded until needed.
+ * 
+ * @param <T>
+ *            The type of the transactions
+ */
+// Note: Package private because we don't need it outside of core
+class TransactionList<T extends Transaction> extends AbstractList<T> implements RandomAccess, Serializable {
+	/** Serial number for serialization. */
+	private static final long serialVersionUID = 2026_10_17_13_10L;
+
+	/** The type of the transactions */
+	private transient Class<T> _type;
+
+	/** All transactions of the warehouse */
+	private transient List<Transaction> _transactions;
+
+	/** Id of each transaction */
+	private transient int[] _ids;
+
+	/** Number of transactions */
+	private transient int _size;
+
+	/**
+	 * Creates a list of transactions
+	 * 
+	 * @param type
+	 *            The type of the transactions
+	 * @param transactions
+	 *            All transactions of the warehouse
+	 * @param ids
+	 *            The ids of the transactions, in order
+	 */
+	TransactionList(Class<T> type, List<Transaction> transactions, int[] ids) {
+		_type = type;
+		_transactions = transactions;
+		_ids = ids;
+		_size = ids.length;
+	}
+
+	/**
+	 * Retrieves the ids of all transactions of a list
+	 * 
+	 * @param transactions
+	 *            The transactions
+	 * @return The ids of all transactions, in order
+	 */
+	// Note: Doesn't retrieve any transactions, if it's a `TransactionList`
+	static IntStream getIds(List<? extends Transaction> transactions) {
+		if (transactions instanceof TransactionList) {
+			var list = (TransactionList<?>) transactions;
+			return Arrays.stream(list._ids, 0, list._size);
+		}
+
+		return transactions.stream().mapToInt(Transaction::getId);
+	}
+
+	@Override
+	public T get(int idx) {
+		var transaction = _transactions.get(_ids[idx]);
+		if (!_type.isInstance(transaction)) {
+			throw new UncheckedIOException(new IOException(
+					"Corrupt snapshot: Transaction " + _ids[idx] + " isn't a " + _type.getSimpleName()));
+		}
+
+		return _type.cast(transaction);
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	@Override
+	public boolean add(T transaction) {
+		if (_size == _ids.length) {
+			_ids = Arrays.copyOf(_ids, Math.max(_size * 2, 8));
+		}
+		_ids[_size++] = transaction.getId();
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Replaces this list with all of it's transactions when serializing
+	 * 
+	 * @return All transactions
+	 */
+	// Note: The transactions may only be decoded from a snapshot, so we can't serialize their ids
+	private Object writeReplace() {
+		return new ArrayList<>(this);
+	}
+}
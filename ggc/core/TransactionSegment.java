@@ -0,0 +1,180 @@
+package ggc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ggc.core.util.SnapshotInput;
+import ggc.core.util.SnapshotOutput;
+
+/**
+ * Sealed segment of consecutive transactions.
+ * 
+ * Transactions are encoded in the same format as snapshots, and are only decoded when accessed. The products and
+ * partners they refer to are kept in tables of the segment, so that, once spilled to disk, only those stay in memory.
+ */
+// Note: Package private because we don't need it outside of core
+class TransactionSegment implements TransactionStore.Decoder {
+	/** Id of the first transaction */
+	private int _firstId;
+
+	/** Number of transactions */
+	private int _size;
+
+	/** All products the transactions refer to */
+	private List<Product> _products;
+
+	/** All partners the transactions refer to */
+	private List<Partner> _partners;
+
+	/** Position of each transaction's record, followed by all records */
+	// Note: `volatile` as it's replaced when spilled again, while readers may be decoding from it
+	private volatile ByteBuffer _buffer;
+
+	/**
+	 * Creates a segment
+	 * 
+	 * @param firstId
+	 *            The id of the first transaction
+	 * @param size
+	 *            The number of transactions
+	 * @param products
+	 *            All products the transactions refer to
+	 * @param partners
+	 *            All partners the transactions refer to
+	 * @param buffer
+	 *            The position of each transaction's record, followed by all records
+	 */
+	private TransactionSegment(int firstId, int size, List<Product> products, List<Partner> partners,
+			ByteBuffer buffer) {
+		_firstId = firstId;
+		_size = size;
+		_products = products;
+		_partners = partners;
+		_buffer = buffer;
+	}
+
+	/**
+	 * Encodes a segment in memory
+	 * 
+	 * @param firstId
+	 *            The id of the first transaction
+	 * @param transactions
+	 *            All transactions, ordered by id
+	 * @return The segment
+	 */
+	static TransactionSegment encode(int firstId, List<Transaction> transactions) {
+		var productIdxs = new HashMap<Product, Integer>();
+		var partnerIdxs = new HashMap<Partner, Integer>();
+		var products = new ArrayList<Product>();
+		var partners = new ArrayList<Partner>();
+
+		var recordsBytes = new ByteArrayOutputStream();
+		var positions = new int[transactions.size()];
+		try (var records = new SnapshotOutput(Channels.newChannel(recordsBytes))) {
+			for (int transactionIdx = 0; transactionIdx < transactions.size(); transactionIdx++) {
+				var transaction = transactions.get(transactionIdx);
+				assert transaction.getId() == firstId + transactionIdx;
+
+				addRef(productIdxs, products, transaction.getProduct());
+				addRef(partnerIdxs, partners, transaction.getPartner());
+				if (transaction instanceof BreakdownTransaction) {
+					for (var pair : ((BreakdownTransaction) transaction).getProductsCreated()) {
+						addRef(productIdxs, products, pair.getLhs());
+					}
+				}
+
+				positions[transactionIdx] = (int) records.size();
+				WarehouseSnapshot.writeTransaction(records, transaction, productIdxs, partnerIdxs);
+			}
+		} catch (IOException e) {
+			// Note: We only ever write to memory, so this can't happen
+			throw new UncheckedIOException(e);
+		}
+
+		var buffer = ByteBuffer.allocate(positions.length * Integer.BYTES + recordsBytes.size());
+		for (var position : positions) {
+			buffer.putInt(position);
+		}
+		buffer.put(recordsBytes.toByteArray());
+		return new TransactionSegment(firstId, positions.length, products, partners, buffer.flip());
+	}
+
+	/**
+	 * Adds a value to a table, if not already in it
+	 * 
+	 * @param <T>
+	 *            The type of the values
+	 * @param idxs
+	 *            The index of each value in the table
+	 * @param values
+	 *            The table
+	 * @param value
+	 *            The value to add
+	 */
+	private static <T> void addRef(Map<T, Integer> idxs, List<T> values, T value) {
+		idxs.computeIfAbsent(value, _value -> {
+			values.add(value);
+			return values.size() - 1;
+		});
+	}
+
+	/**
+	 * Spills this segment onto the end of a file, reading it from there afterwards, possibly after already spilled to
+	 * another file
+	 * 
+	 * @param path
+	 *            The path of the file
+	 * @throws IOException
+	 *             If unable to write to the file
+	 */
+	// Note: The mapping stays valid after closing the channel, so we don't keep it open
+	void spill(Path path) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long start = channel.size();
+			var buffer = _buffer.duplicate();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, start + buffer.position());
+			}
+			_buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, buffer.limit());
+		}
+	}
+
+	/**
+	 * Checks if this segment is spilled to a file
+	 * 
+	 * @return If this segment is spilled to a file
+	 */
+	// Note: Segments are encoded onto the heap, and are only ever mapped once spilled
+	boolean isSpilled() {
+		return _buffer instanceof MappedByteBuffer;
+	}
+
+	/**
+	 * Retrieves the size of this segment, once encoded
+	 * 
+	 * @return The number of bytes of this segment
+	 */
+	int getByteSize() {
+		return _buffer.limit();
+	}
+
+	@Override
+	public Transaction decode(int id) throws IOException {
+		// Note: Each transaction is decoded with it's own input, as they may be decoded in any order
+		var buffer = _buffer;
+		int recordsStart = _size * Integer.BYTES;
+		var in = new SnapshotInput(buffer.slice(recordsStart, buffer.limit() - recordsStart));
+		in.seekRecord(buffer.getInt((id - _firstId) * Integer.BYTES));
+		return WarehouseSnapshot.readTransaction(in, id, _products, _partners);
+	}
+}
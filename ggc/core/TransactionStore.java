@@ -0,0 +1,552 @@
+package ggc.core;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * All transactions of a warehouse, by id.
+ * 
+ * Transactions are appended onto chunks of consecutive transactions. Once full, a chunk is sealed onto a segment,
+ * encoded and spilled to disk, and it's transactions are only decoded when accessed, and are kept only while memory
+ * allows it. The transactions of a snapshot, it's history, are a single sealed segment. Each transaction's segment is
+ * found through a sparse index of the first id of each segment.
+ * 
+ * Appending and retrieving transactions is lock-free. Each transaction's id is allocated first, and it's only visible
+ * once it, and all transactions before it, are published.
+ * 
+ * Unpaid sales of sealed segments are kept in memory, as they may still change. Once paid for long enough, they're
+ * archived by sealing the parts of segments with them again.
+ */
+// Note: Package private because we don't need it outside of core
+class TransactionStore extends AbstractList<Transaction> implements RandomAccess, Serializable {
+	/** Serial number for serialization. */
+	private static final long serialVersionUID = 2026_10_17_13_10L;
+
+	/** Decoder of a transaction of the history */
+	@FunctionalInterface
+	interface Decoder {
+		/**
+		 * Decodes a transaction
+		 * 
+		 * @param id
+		 *            The id of the transaction
+		 * @return The transaction
+		 * @throws IOException
+		 *             If unable to decode the transaction
+		 */
+		Transaction decode(int id) throws IOException;
+	}
+
+	/** Transaction decoded from the history, while memory allows it */
+	private static class CachedTransaction extends SoftReference<Transaction> {
+		/** Id of the transaction */
+		private int _id;
+
+		/**
+		 * Caches a transaction
+		 * 
+		 * @param transaction
+		 *            The transaction
+		 * @param queue
+		 *            Queue to add the cache entry to once the transaction is collected
+		 */
+		CachedTransaction(Transaction transaction, ReferenceQueue<Transaction> queue) {
+			super(transaction, queue);
+			_id = transaction.getId();
+		}
+	}
+
+	/** Chunk of consecutive transactions appended after all sealed segments, sealed once full */
+	private static class Chunk {
+		/** Id of the first transaction */
+		private int _start;
+
+		/** All transactions, by their offset from the first, once published */
+		private AtomicReferenceArray<Transaction> _transactions = new AtomicReferenceArray<>(SEGMENT_SIZE);
+
+		/** The chunk after this one, once created */
+		private AtomicReference<Chunk> _next = new AtomicReference<>();
+
+		/**
+		 * Creates an empty chunk
+		 * 
+		 * @param start
+		 *            The id of the first transaction
+		 */
+		Chunk(int start) {
+			_start = start;
+		}
+
+		/**
+		 * Retrieves the chunk of a transaction, after this one, creating all chunks up to it
+		 * 
+		 * @param id
+		 *            The id of the transaction, at least the id of the first transaction of this chunk
+		 * @return The chunk of the transaction
+		 */
+		// Note: If many appenders create the next chunk at once, only the first one created is used
+		Chunk find(int id) {
+			var chunk = this;
+			while (id >= chunk._start + SEGMENT_SIZE) {
+				var next = chunk._next.get();
+				if (next == null) {
+					chunk._next.compareAndSet(null, new Chunk(chunk._start + SEGMENT_SIZE));
+					next = chunk._next.get();
+				}
+				chunk = next;
+			}
+
+			return chunk;
+		}
+
+		/**
+		 * Retrieves a transaction
+		 * 
+		 * @param id
+		 *            The id of the transaction, in this chunk
+		 * @return The transaction, or `null` if not published yet
+		 */
+		Transaction get(int id) {
+			return _transactions.get(id - _start);
+		}
+	}
+
+	/** Index of all sealed segments, followed by the chunk being appended onto */
+	// Note: Never changed once created, it's replaced with a new one whenever segments are sealed, so it may
+	//       be read without locking.
+	private static class Segments {
+		/** Id of the first transaction of each sealed segment, in order */
+		private int[] _starts;
+
+		/** Decoder of each sealed segment */
+		private Decoder[] _decoders;
+
+		/** The chunk being appended onto, after all sealed segments */
+		private Chunk _recent;
+
+		/**
+		 * Creates an index
+		 * 
+		 * @param starts
+		 *            The id of the first transaction of each sealed segment, in order
+		 * @param decoders
+		 *            The decoder of each sealed segment
+		 * @param recent
+		 *            The chunk being appended onto
+		 */
+		Segments(int[] starts, Decoder[] decoders, Chunk recent) {
+			_starts = starts;
+			_decoders = decoders;
+			_recent = recent;
+		}
+
+		/**
+		 * Retrieves an index with a sealed segment inserted
+		 * 
+		 * @param segmentIdx
+		 *            The index to insert the segment at
+		 * @param start
+		 *            The id of the first transaction of the segment
+		 * @param decoder
+		 *            The decoder of the segment
+		 * @param recent
+		 *            The chunk being appended onto
+		 * @return The index
+		 */
+		Segments insert(int segmentIdx, int start, Decoder decoder, Chunk recent) {
+			var starts = new int[_starts.length + 1];
+			var decoders = new Decoder[_decoders.length + 1];
+			System.arraycopy(_starts, 0, starts, 0, segmentIdx);
+			System.arraycopy(_decoders, 0, decoders, 0, segmentIdx);
+			System.arraycopy(_starts, segmentIdx, starts, segmentIdx + 1, _starts.length - segmentIdx);
+			System.arraycopy(_decoders, segmentIdx, decoders, segmentIdx + 1, _decoders.length - segmentIdx);
+			starts[segmentIdx] = start;
+			decoders[segmentIdx] = decoder;
+			return new Segments(starts, decoders, recent);
+		}
+
+		/**
+		 * Finds the sealed segment of a transaction, the last one starting before it
+		 * 
+		 * @param id
+		 *            The id of the transaction
+		 * @return The index of the segment
+		 */
+		int find(int id) {
+			int segmentIdx = Arrays.binarySearch(_starts, id);
+			return segmentIdx >= 0 ? segmentIdx : -segmentIdx - 2;
+		}
+
+		/**
+		 * Retrieves the id after the last transaction of a sealed segment
+		 * 
+		 * @param segmentIdx
+		 *            The index of the segment
+		 * @return The id after the segment's last transaction
+		 */
+		int end(int segmentIdx) {
+			return segmentIdx + 1 < _starts.length ? _starts[segmentIdx + 1] : _recent._start;
+		}
+	}
+
+	/** Number of transactions in each segment, once sealed */
+	private static final int SEGMENT_SIZE = 1 << 12;
+
+	/** Index of all sealed segments, and the chunk being appended onto */
+	// Note: `volatile` as it's read without locking, see `Segments`
+	private transient volatile Segments _segments = new Segments(new int[0], new Decoder[0], new Chunk(0));
+
+	/** Id of the next transaction to allocate */
+	private transient AtomicInteger _nextId = new AtomicInteger();
+
+	/** Number of transactions published, all of them before any transaction not yet published */
+	// Note: Transactions may be published out of order, but only become visible once all before them are,
+	//       so readers never see a gap.
+	private transient AtomicInteger _published = new AtomicInteger();
+
+	/** Lock held while replacing the index of sealed segments */
+	// Note: Only sealing and archiving hold it, appending and reading never do
+	private transient Lock _segmentsLock = new ReentrantLock();
+
+	/** Logger for failures to spill segments, which don't fail any operation */
+	private static final System.Logger LOGGER = System.getLogger(TransactionStore.class.getName());
+
+	/** File to spill sealed segments to, once created */
+	private transient Optional<Path> _spillPath = Optional.empty();
+
+	/** Size of the file sealed segments are spilled to, including segments no longer used */
+	private transient long _spillSize;
+
+	/** All transactions of sealed segments decoded, while memory allows it */
+	// Note: Concurrent, as transactions may be decoded by many readers at once
+	private transient Map<Integer, CachedTransaction> _cache = new ConcurrentHashMap<>();
+
+	/** Queue of all cached transactions collected */
+	private transient ReferenceQueue<Transaction> _collected = new ReferenceQueue<>();
+
+	/** All transactions of sealed segments that must always be the same instance, such as unpaid sales */
+	// Note: Concurrent, as they're retrieved without locking while segments are sealed and archived
+	private transient Map<Integer, Transaction> _pinned = new ConcurrentHashMap<>();
+
+	/** Creates an empty store */
+	TransactionStore() {
+	}
+
+	/**
+	 * Adds a sealed segment after all transactions, such as the history of a snapshot
+	 * 
+	 * @param size
+	 *            The number of transactions in the segment
+	 * @param decoder
+	 *            The decoder of the segment
+	 */
+	// Note: Only possible while no transactions are being appended onto a chunk
+	void addSegment(int size, Decoder decoder) {
+		var segments = _segments;
+		int start = segments._recent._start;
+		assert _nextId.get() == start && _published.get() == start;
+		if (size == 0) {
+			return;
+		}
+
+		_segments = segments.insert(segments._starts.length, start, decoder, new Chunk(start + size));
+		_nextId.addAndGet(size);
+		_published.addAndGet(size);
+	}
+
+	/**
+	 * Pins a transaction of a sealed segment, so it's always retrieved as the same instance
+	 * 
+	 * @param transaction
+	 *            The transaction to pin, as retrieved from this store
+	 */
+	void pin(Transaction transaction) {
+		assert transaction.getId() < _segments._recent._start;
+		_pinned.put(transaction.getId(), transaction);
+	}
+
+	@Override
+	public Transaction get(int id) {
+		Objects.checkIndex(id, size());
+
+		// Note: The index is read after the number of transactions published, so, if the transaction isn't
+		//       in a sealed segment, it's in the chunk being appended onto, or one after it.
+		var segments = _segments;
+		if (id >= segments._recent._start) {
+			return segments._recent.find(id).get(id);
+		}
+
+		var pinned = _pinned.get(id);
+		if (pinned != null) {
+			return pinned;
+		}
+
+		// Check if we still have it cached
+		removeCollected();
+		var cached = _cache.get(id);
+		var transaction = cached == null ? null : cached.get();
+		if (transaction != null) {
+			return transaction;
+		}
+
+		// Else decode it from it's segment and cache it
+		// Note: If another reader cached it meanwhile, we return theirs, so it's always the same instance
+		Transaction decoded;
+		try {
+			decoded = segments._decoders[segments.find(id)].decode(id);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		var entry = _cache.compute(id, (_id, prevEntry) -> prevEntry != null && prevEntry.get() != null ? prevEntry
+				: new CachedTransaction(decoded, _collected));
+		transaction = entry.get();
+		return transaction != null ? transaction : decoded;
+	}
+
+	/** Removes all cache entries whose transactions were collected */
+	private void removeCollected() {
+		CachedTransaction collected;
+		while ((collected = (CachedTransaction) _collected.poll()) != null) {
+			_cache.remove(collected._id, collected);
+		}
+	}
+
+	@Override
+	public int size() {
+		return _published.get();
+	}
+
+	/**
+	 * Allocates the id of a new transaction, to be published with `publish`
+	 * 
+	 * @return The id
+	 */
+	int allocateId() {
+		return _nextId.getAndIncrement();
+	}
+
+	/**
+	 * Publishes a new transaction, with an id allocated by `allocateId`
+	 * 
+	 * @param transaction
+	 *            The transaction
+	 */
+	void publish(Transaction transaction) {
+		int id = transaction.getId();
+		assert id < _nextId.get();
+		var chunk = _segments._recent.find(id);
+		chunk._transactions.set(id - chunk._start, transaction);
+
+		// Then publish all transactions after the last one published, up to the first one missing
+		// Note: Whoever publishes the transaction before a missing one stops, and it's publisher continues.
+		while (true) {
+			int published = _published.get();
+			var recent = _segments._recent;
+			// Note: Chunks were sealed after we read how many were published, so we read it again
+			if (published < recent._start) {
+				Thread.onSpinWait();
+				continue;
+			}
+			if (published == _nextId.get() || recent.find(published).get(published) == null) {
+				break;
+			}
+
+			_published.compareAndSet(published, published + 1);
+		}
+
+		// Finally seal all chunks that are full
+		if (_published.get() >= _segments._recent._start + SEGMENT_SIZE) {
+			sealFull();
+		}
+	}
+
+	@Override
+	public boolean add(Transaction transaction) {
+		int id = allocateId();
+		assert transaction.getId() == id;
+		publish(transaction);
+		return true;
+	}
+
+	/** Seals all chunks that are full, and spills them to disk */
+	private void sealFull() {
+		_segmentsLock.lock();
+		try {
+			var segments = _segments;
+			while (_published.get() >= segments._recent._start + SEGMENT_SIZE) {
+				var recent = segments._recent;
+				var transactions = IntStream.range(recent._start, recent._start + SEGMENT_SIZE).mapToObj(recent::get)
+						.collect(Collectors.toList());
+				var segment = TransactionSegment.encode(recent._start, transactions);
+				spill(segment);
+
+				// Note: Unpaid sales may still change, so they're always kept, while all others
+				//       are only decoded again once accessed.
+				for (var transaction : transactions) {
+					if (transaction instanceof Sale && !((Sale) transaction).isPaid()) {
+						_pinned.put(transaction.getId(), transaction);
+					}
+				}
+
+				segments = segments.insert(segments._starts.length, recent._start, segment,
+						recent.find(recent._start + SEGMENT_SIZE));
+				_segments = segments;
+			}
+		} finally {
+			_segmentsLock.unlock();
+		}
+	}
+
+	/**
+	 * Archives all sales of sealed segments paid before a date, so they're no longer kept in memory
+	 * 
+	 * @param date
+	 *            The date to archive all sales paid before
+	 */
+	// Note: The part of the segment with each sale, up to `SEGMENT_SIZE` transactions, is sealed
+	//       again, with the sales as they are now, and replaces that part of the segment.
+	void archiveSettled(int date) {
+		int[] settledIds = _pinned.values().stream()
+				.filter(transaction -> transaction instanceof Sale
+						&& ((Sale) transaction).getPaymentDate().orElse(date) < date)
+				.mapToInt(Transaction::getId).sorted().toArray();
+
+		_segmentsLock.lock();
+		try {
+			var segments = _segments;
+			int settledIdx = 0;
+			while (settledIdx < settledIds.length) {
+				int segmentIdx = segments.find(settledIds[settledIdx]);
+				int segmentStart = segments._starts[segmentIdx];
+				int segmentEnd = segments.end(segmentIdx);
+				int start = segmentStart + (settledIds[settledIdx] - segmentStart) / SEGMENT_SIZE * SEGMENT_SIZE;
+				int end = Math.min(start + SEGMENT_SIZE, segmentEnd);
+
+				var segment = TransactionSegment.encode(start,
+						IntStream.range(start, end).mapToObj(this::get).collect(Collectors.toList()));
+				spill(segment);
+
+				// Note: The rest of the segment, before and after the part, is still decoded from it
+				var previous = segments._decoders[segmentIdx];
+				if (start == segmentStart) {
+					var decoders = segments._decoders.clone();
+					decoders[segmentIdx] = segment;
+					segments = new Segments(segments._starts, decoders, segments._recent);
+				} else {
+					segments = segments.insert(++segmentIdx, start, segment, segments._recent);
+				}
+				if (end < segmentEnd) {
+					segments = segments.insert(segmentIdx + 1, end, previous, segments._recent);
+				}
+				_segments = segments;
+
+				while (settledIdx < settledIds.length && settledIds[settledIdx] < end) {
+					_pinned.remove(settledIds[settledIdx++]);
+				}
+			}
+			if (settledIds.length > 0) {
+				compactSpill();
+			}
+		} finally {
+			_segmentsLock.unlock();
+		}
+	}
+
+	/**
+	 * Spills a sealed segment to disk
+	 * 
+	 * @param segment
+	 *            The segment to spill
+	 */
+	// Note: Only called while holding `_segmentsLock`
+	private void spill(TransactionSegment segment) {
+		try {
+			if (_spillPath.isEmpty()) {
+				_spillPath = Optional.of(createSpillFile());
+			}
+			segment.spill(_spillPath.get());
+			_spillSize += segment.getByteSize();
+		} catch (IOException e) {
+			// Note: The segment is kept encoded in memory instead, so no transaction is lost
+			LOGGER.log(System.Logger.Level.WARNING, "Unable to spill transactions to disk, keeping them in memory", e);
+		}
+	}
+
+	/** Compacts the spill file, once most of it is segments no longer used */
+	// Note: Segments sealed again when archiving replace parts of others, which, once no longer used,
+	//       are left behind in the file, so the file is rewritten with only the segments still used,
+	//       keeping it at most twice their size.
+	// Note: Only called while holding `_segmentsLock`
+	private void compactSpill() {
+		var spilledSegments = Arrays.stream(_segments._decoders) //
+				.filter(decoder -> decoder instanceof TransactionSegment) //
+				.map(decoder -> (TransactionSegment) decoder) //
+				.filter(TransactionSegment::isSpilled) //
+				.distinct() //
+				.collect(Collectors.toList());
+		long usedSize = spilledSegments.stream().mapToLong(TransactionSegment::getByteSize).sum();
+		if (_spillPath.isEmpty() || _spillSize <= 2 * usedSize) {
+			return;
+		}
+
+		// Note: Readers still decoding from the previous file keep their mapping of it, which stays valid after
+		//       it's deleted.
+		try {
+			var path = createSpillFile();
+			for (var segment : spilledSegments) {
+				segment.spill(path);
+			}
+
+			var previousPath = _spillPath.get();
+			_spillPath = Optional.of(path);
+			_spillSize = usedSize;
+			Files.deleteIfExists(previousPath);
+		} catch (IOException e) {
+			// Note: Any segments already moved are read from the new file, which is deleted on exit
+			LOGGER.log(System.Logger.Level.WARNING, "Unable to compact spilled transactions", e);
+		}
+	}
+
+	/**
+	 * Creates a new file to spill segments to, deleted on exit
+	 * 
+	 * @return The path of the file
+	 * @throws IOException
+	 *             If unable to create the file
+	 */
+	private static Path createSpillFile() throws IOException {
+		var path = Files.createTempFile("ggc-transactions", ".segments");
+		path.toFile().deleteOnExit();
+		return path;
+	}
+
+	/**
+	 * Replaces this store with all of it's transactions when serializing
+	 * 
+	 * @return All transactions
+	 */
+	// Note: Sealed segments can't be serialized, as they're decoded from a snapshot or disk
+	private Object writeReplace() {
+		return new ArrayList<>(this);
+	}
+}
@@ -0,0 +1,217 @@
+package ggc.core;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Ledger of all unpaid sales.
+ *
+ * Keeps the total cost of each unpaid sale at the current date, along with the running sum of all of them. Each sale
+ * is grouped by the first date at which it's total cost may change, so that advancing the date only recomputes the
+ * sales whose time period (or penalty) changed.
+ */
+// Note: Package private because we don't need it outside of core
+class UnpaidSalesLedger {
+	/** Cached cost of an unpaid sale */
+	private static class Entry {
+		/** Total cost of the sale at the date it was last computed */
+		private double _cost;
+
+		/** First date at which the cost may no longer be valid */
+		private int _validUntil;
+	}
+
+	/** All unpaid sales and their cached cost */
+	private Map<Sale, Entry> _entries = new HashMap<>();
+
+	/** All unpaid sales, grouped by the date at which their cost must be recomputed */
+	private TreeMap<Integer, Set<Sale>> _salesByExpiry = new TreeMap<>();
+
+	/** All unpaid sales, grouped by their partner */
+	private Map<Partner, Set<Sale>> _salesByPartner = new HashMap<>();
+
+	/** Sum of the cost of all unpaid sales */
+	private double _total;
+
+	/**
+	 * Retrieves the total cost of all unpaid sales
+	 *
+	 * @return The total cost of all unpaid sales
+	 */
+	double getTotal() {
+		return _total;
+	}
+
+	/**
+	 * Restores the total cost of all unpaid sales, as added up by another ledger of the same sales
+	 *
+	 * @param total
+	 *            The total cost of all unpaid sales
+	 */
+	// Note: The total is added up as sales change, so adding it up again may round differently
+	void restoreTotal(double total) {
+		_total = total;
+	}
+
+	/**
+	 * Retrieves all unpaid sales, in no particular order
+	 *
+	 * @return All unpaid sales
+	 */
+	Stream<Sale> getSales() {
+		return _entries.keySet().stream();
+	}
+
+	/**
+	 * Adds an unpaid sale to this ledger
+	 *
+	 * @param sale
+	 *            The sale to add
+	 * @param date
+	 *            The current date
+	 */
+	void add(Sale sale, int date) {
+		assert !sale.isPaid();
+		assert !_entries.containsKey(sale);
+
+		var entry = new Entry();
+		_entries.put(sale, entry);
+		_salesByPartner.computeIfAbsent(sale.getPartner(), _partner -> new LinkedHashSet<>()).add(sale);
+		update(sale, entry, date);
+	}
+
+	/**
+	 * Removes a sale from this ledger, if it exists
+	 *
+	 * @param sale
+	 *            The sale to remove
+	 */
+	void remove(Sale sale) {
+		var entry = _entries.remove(sale);
+		if (entry == null) {
+			return;
+		}
+
+		_total -= entry._cost;
+		removeExpiry(sale, entry);
+
+		var partnerSales = _salesByPartner.get(sale.getPartner());
+		partnerSales.remove(sale);
+		if (partnerSales.isEmpty()) {
+			_salesByPartner.remove(sale.getPartner());
+		}
+	}
+
+	/**
+	 * Recomputes the cost of all sales whose cost may have changed by `date`.
+	 *
+	 * @param date
+	 *            The current date
+	 */
+	void refresh(int date) {
+		// Note: We remove the whole group before updating, as each sale will be
+		//       re-inserted with a later expiry date.
+		Map.Entry<Integer, Set<Sale>> expired;
+		while ((expired = _salesByExpiry.firstEntry()) != null && expired.getKey() <= date) {
+			_salesByExpiry.pollFirstEntry();
+			for (var sale : expired.getValue()) {
+				update(sale, _entries.get(sale), date);
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the cost of all sales of a partner.
+	 *
+	 * This must be called whenever the partner's status changes, as the status dictates all discounts and penalties.
+	 *
+	 * @param partner
+	 *            The partner whose sales to recompute
+	 * @param date
+	 *            The current date
+	 */
+	void refreshPartner(Partner partner, int date) {
+		var partnerSales = _salesByPartner.get(partner);
+		if (partnerSales == null) {
+			return;
+		}
+
+		for (var sale : partnerSales) {
+			var entry = _entries.get(sale);
+			removeExpiry(sale, entry);
+			update(sale, entry, date);
+		}
+	}
+
+	/**
+	 * Recomputes a sale's cost and re-inserts it into the expiry groups
+	 *
+	 * @param sale
+	 *            The sale to update
+	 * @param entry
+	 *            The sale's entry
+	 * @param date
+	 *            The current date
+	 */
+	private void update(Sale sale, Entry entry, int date) {
+		var cost = sale.getTotalCostAt(date);
+		_total += cost - entry._cost;
+		entry._cost = cost;
+		entry._validUntil = costValidUntil(sale, date);
+		_salesByExpiry.computeIfAbsent(entry._validUntil, _date -> new LinkedHashSet<>()).add(sale);
+	}
+
+	/**
+	 * Removes a sale from it's expiry group
+	 *
+	 * @param sale
+	 *            The sale to remove
+	 * @param entry
+	 *            The sale's entry
+	 */
+	private void removeExpiry(Sale sale, Entry entry) {
+		var group = _salesByExpiry.get(entry._validUntil);
+		if (group == null) {
+			return;
+		}
+
+		group.remove(sale);
+		if (group.isEmpty()) {
+			_salesByExpiry.remove(entry._validUntil);
+		}
+	}
+
+	/**
+	 * Retrieves the first date after `date` at which the cost of a sale may change
+	 *
+	 * @param sale
+	 *            The sale to check
+	 * @param date
+	 *            The current date
+	 * @return The first date at which the cost must be recomputed
+	 */
+	private static int costValidUntil(Sale sale, int date) {
+		int deadline = sale.getPaymentDeadline();
+		int factor = sale.getProduct().getPaymentFactor();
+
+		// If we're past the deadline, penalties may change every day
+		if (date > deadline) {
+			return date + 1;
+		}
+
+		// Else the cost may only change on the start of `P2`, 2 days before the deadline
+		// (on which some discounts end) and on the start of `P3`.
+		int validUntil = deadline + 1;
+		for (var boundary : new int[] { deadline - factor + 1, deadline - 1 }) {
+			if (boundary > date && boundary < validUntil) {
+				validUntil = boundary;
+			}
+		}
+
+		return validUntil;
+	}
+}
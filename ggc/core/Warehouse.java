@@ -1,14 +1,22 @@
 package ggc.core;
 
 import java.io.Serializable;
-import java.text.CollationKey;
 import java.text.Collator;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -24,6 +32,7 @@ import ggc.core.exception.UnknownPartnerIdException;
 import ggc.core.exception.UnknownProductIdException;
 import ggc.core.notification.BargainNotification;
 import ggc.core.notification.NewNotification;
+import ggc.core.util.SortKey;
 import ggc.core.util.SortedMultiMap;
 import static ggc.core.util.StreamIterator.streamIt;
 import ggc.core.util.Pair;
@@ -37,15 +46,27 @@ class Warehouse implements Serializable {
 	/** Serial number for serialization. */
 	private static final long serialVersionUID = 2021_10_28_18_50L;
 
-	/** Collator for all strings */
-	private static Collator collator;
+	/** Number of days after being paid that sales are archived */
+	private static final int ARCHIVE_SETTLED_DAYS = 30;
 
-	static {
-		collator = Collator.getInstance();
+	/** Collator for all strings, of each thread */
+	// Note: A collator can only be used by one thread at a time, so each thread uses it's own
+	private static ThreadLocal<Collator> collator = ThreadLocal.withInitial(() -> {
+		var collator = Collator.getInstance();
 		// Note: Secondary so we consider accents
 		collator.setStrength(Collator.SECONDARY);
 		collator.setDecomposition(Collator.FULL_DECOMPOSITION);
-	}
+		return collator;
+	});
+
+	/** Collator for all strings, ignoring accents, of each thread */
+	// Note: Used to find where a prefix ends in collation order, given that
+	//       accents are only compared after all base letters.
+	private static ThreadLocal<Collator> primaryCollator = ThreadLocal.withInitial(() -> {
+		var primaryCollator = (Collator) collator.get().clone();
+		primaryCollator.setStrength(Collator.PRIMARY);
+		return primaryCollator;
+	});
 
 	/** Current date */
 	private int _date;
@@ -53,27 +74,40 @@ class Warehouse implements Serializable {
 	/** Available balance */
 	private int _availableBalance;
 
-	/** Next transaction id */
-	private int _nextTransactionId;
-
 	/** All transactions */
-	private List<Transaction> _transactions = new ArrayList<>();
+	// Note: Serialized as a list of all transactions, see `TransactionStore`
+	private List<Transaction> _transactions = new TransactionStore();
 
-	/** All partners */
-	// Note: `transient` as `CollationKey`s aren't [de]serializable and the keys
+	/** All partners, in collation order of their ids */
+	// Note: `transient` as `SortKey`s aren't [de]serializable and the keys
 	//       are redundant either way.
-	private transient Map<CollationKey, Partner> _partners = new HashMap<>();
+	private transient NavigableMap<SortKey, Partner> _partners = new TreeMap<>();
 
-	/** All products */
-	// Note: `transient` as `CollationKey`s aren't [de]serializable and the keys
+	/** All products, in collation order of their ids */
+	// Note: `transient` as `SortKey`s aren't [de]serializable and the keys
 	//       are redundant either way.
-	private transient Map<CollationKey, Product> _products = new HashMap<>();
+	private transient NavigableMap<SortKey, Product> _products = new TreeMap<>();
 
 	/** All batches */
 	// Note: `transient` as `SortedMultiMap` isn't [de]serializable and the keys
 	//       are redundant either way.
 	private transient SortedMultiMap<Product, Batch> _batches = new SortedMultiMap<>(new BatchComparator());
 
+	/** All batches, indexed by their unit price */
+	// Note: `transient` as it's redundant with `_batches`.
+	private transient NavigableMap<Double, Set<Batch>> _batchesByPrice = new TreeMap<>();
+
+	/** All batches, indexed by their partner */
+	// Note: `transient` as it's redundant with `_batches`.
+	private transient Map<Partner, Set<Batch>> _batchesByPartner = new HashMap<>();
+
+	/** All notifications sent to partners */
+	private NotificationLog _notificationLog = new NotificationLog();
+
+	/** All unpaid sales */
+	// Note: `transient` as it's redundant with each partner's sales.
+	private transient UnpaidSalesLedger _unpaidSales = new UnpaidSalesLedger();
+
 	/** Comparator for ordering batches by cheapest */
 	private class BatchComparator implements Comparator<Batch> {
 		@Override
@@ -82,6 +116,40 @@ class Warehouse implements Serializable {
 		}
 	}
 
+	/** Creates a new, empty, warehouse */
+	Warehouse() {
+	}
+
+	/**
+	 * Restores a warehouse from all of it's parts
+	 * 
+	 * @param date
+	 *            The current date
+	 * @param availableBalance
+	 *            The available balance
+	 * @param transactions
+	 *            All transactions, ordered by id
+	 * @param partners
+	 *            All partners
+	 * @param products
+	 *            All products
+	 * @param batches
+	 *            All batches, in order for each product
+	 * @param unpaidSales
+	 *            All unpaid sales
+	 * @param notificationLog
+	 *            The log of all notifications sent
+	 */
+	Warehouse(int date, int availableBalance, List<Transaction> transactions,
+			List<Partner> partners, List<Product> products, List<Batch> batches, List<Sale> unpaidSales,
+			NotificationLog notificationLog) {
+		_date = date;
+		_availableBalance = availableBalance;
+		_transactions = transactions;
+		_notificationLog = notificationLog;
+		rebuildIndexes(partners, products, batches, unpaidSales);
+	}
+
 	/**
 	 * Imports a file onto this warehouse
 	 * 
@@ -96,8 +164,15 @@ class Warehouse implements Serializable {
 	 */
 	void importFile(String fileName) throws IOException, BadEntryException, ParsingException {
 		// Create a parser and visit all lines
+		// Note: Batches are only inserted once all lines are visited, or any line fails, so that each
+		//       product's batches are sorted only once.
 		var parser = new Parser(fileName);
-		parser.visit(new ImportParserVisitor(this));
+		var visitor = new ImportParserVisitor(this);
+		try {
+			parser.visit(visitor);
+		} finally {
+			insertBatches(visitor._batches);
+		}
 	}
 
 	/** Visitor for importing a file */
@@ -105,6 +180,9 @@ class Warehouse implements Serializable {
 		/** The warehouse we're importing onto */
 		private Warehouse _warehouse;
 
+		/** All batches visited, in order, to insert once we're done */
+		private List<Batch> _batches = new ArrayList<>();
+
 		/**
 		 * Creates a new visitor
 		 * 
@@ -117,8 +195,14 @@ class Warehouse implements Serializable {
 
 		@Override
 		public void visitPartner(String id, String name, String address) {
-			var partner = new Partner(id, name, address);
-			_warehouse._partners.put(getCollationKey(partner.getId()), partner);
+			var partner = new Partner(id, name, address, _warehouse._transactions);
+			partner.setNotificationCursor(_warehouse._notificationLog.addCursor());
+
+			// Note: If we're replacing a partner, they'll never read their notifications
+			var prevPartner = _warehouse._partners.put(partner.getCollationKey(), partner);
+			if (prevPartner != null) {
+				_warehouse._notificationLog.removeCursor(prevPartner.getNotificationCursor());
+			}
 		}
 
 		@Override
@@ -133,25 +217,24 @@ class Warehouse implements Serializable {
 			// Then get the partner and create a new batch for it
 			Partner partner = _warehouse.getPartner(partnerId)
 					.orElseThrow(() -> new UnknownPartnerIdException(partnerId));
-			Batch batch = new Batch(product, partner, quantity, unitPrice);
-			_warehouse.insertBatch(batch);
+			_batches.add(new Batch(product, partner, quantity, unitPrice));
 		}
 
 		@Override
 		public void visitDerivedBatch(String productId, String partnerId, int quantity, double unitPrice,
-				double costFactor, Stream<Pair<String, Integer>> recipeProductIdQuantities)
+				double costFactor, String[] recipeProductIds, int[] recipeQuantities)
 				throws UnknownPartnerIdException, UnknownProductIdException, ProductAlreadyExistsException {
 			// Get the product or register it
 			Product product = _warehouse.getProduct(productId).orElse(null);
 			if (product == null) {
-				product = _warehouse.registerDerivedProduct(productId, costFactor, recipeProductIdQuantities);
+				var recipe = Recipe.fromProductIds(recipeProductIds, recipeQuantities, _warehouse::getProduct);
+				product = _warehouse.registerDerivedProduct(productId, costFactor, recipe);
 			}
 
 			// Then get the partner and create a new batch for it
 			Partner partner = _warehouse.getPartner(partnerId)
 					.orElseThrow(() -> new UnknownPartnerIdException(partnerId));
-			Batch batch = new Batch(product, partner, quantity, unitPrice);
-			_warehouse.insertBatch(batch);
+			_batches.add(new Batch(product, partner, quantity, unitPrice));
 		}
 
 	}
@@ -163,8 +246,59 @@ class Warehouse implements Serializable {
 	 *            The key to retrieve the collation key for
 	 * @return The collation key
 	 */
-	private static CollationKey getCollationKey(String key) {
-		return collator.getCollationKey(key);
+	static SortKey getCollationKey(String key) {
+		return SortKey.of(collator.get(), key);
+	}
+
+	/**
+	 * Retrieves all values of a registry with ids in a range, in collation order
+	 * 
+	 * @param <T>
+	 *            The type of the values
+	 * @param registry
+	 *            The registry to search
+	 * @param fromId
+	 *            The (inclusive) lower bound of the ids
+	 * @param toId
+	 *            The (exclusive) upper bound of the ids
+	 * @return All values whose id is in the range, or none if the bounds are reversed
+	 */
+	private static <T> Stream<T> registryInRange(NavigableMap<SortKey, T> registry, String fromId, String toId) {
+		// Note: `subMap` throws if the bounds are reversed, but to us that's just an empty range
+		var fromKey = getCollationKey(fromId);
+		var toKey = getCollationKey(toId);
+		if (fromKey.compareTo(toKey) > 0) {
+			return Stream.empty();
+		}
+
+		return registry.subMap(fromKey, true, toKey, false).values().stream();
+	}
+
+	/**
+	 * Retrieves all values of a registry whose ids start with `prefix`, in collation order
+	 * 
+	 * @param <T>
+	 *            The type of the values
+	 * @param registry
+	 *            The registry to search
+	 * @param getId
+	 *            Getter for the id of each value
+	 * @param prefix
+	 *            The prefix of the ids
+	 * @return All values whose id starts with the prefix
+	 */
+	private static <T> Stream<T> registryWithPrefix(NavigableMap<SortKey, T> registry, Function<T, String> getId,
+			String prefix) {
+		// Note: All ids starting with `prefix` are at or after it, and before the first
+		//       id whose base letters go past the prefix's, but accents may still differ
+		//       in between, so we filter those out.
+		Function<T, String> getIdPrefix = value -> {
+			var id = getId.apply(value);
+			return id.substring(0, Math.min(prefix.length(), id.length()));
+		};
+		return registry.tailMap(getCollationKey(prefix), true).values().stream() //
+				.takeWhile(value -> primaryCollator.get().compare(getIdPrefix.apply(value), prefix) <= 0) //
+				.filter(value -> collator.get().equals(getIdPrefix.apply(value), prefix));
 	}
 
 	/**
@@ -175,7 +309,7 @@ class Warehouse implements Serializable {
 	 * @throws IOException
 	 *             If unable to write
 	 */
-	// Note: We need to override the saving and loading because we use `RuleBasedCollationKey`s,
+	// Note: We need to override the saving and loading because we use `SortKey`s,
 	// and either way, the hashmaps could be saved as lists, the keys are redundant.
 	private void writeObject(ObjectOutputStream out) throws IOException {
 		out.defaultWriteObject();
@@ -201,12 +335,72 @@ class Warehouse implements Serializable {
 		var products = (List<Product>) in.readObject();
 		var batches = (List<Batch>) in.readObject();
 
-		_partners = partners.stream()
-				.collect(Collectors.toMap(partner -> getCollationKey(partner.getId()), partner -> partner));
-		_products = products.stream()
-				.collect(Collectors.toMap(product -> getCollationKey(product.getId()), product -> product));
-		_batches = batches.stream().map(batch -> new Pair<>(batch.getProduct(), batch))
-				.collect(SortedMultiMap.collector(new BatchComparator()));
+		// Note: All transactions are moved onto a store, with each partner's transactions retrieved from it
+		var transactions = new TransactionStore();
+		_transactions.forEach(transactions::add);
+		_transactions = transactions;
+		for (var partner : partners) {
+			partner.restoreTransactions(
+					new TransactionList<>(Purchase.class, transactions, partner.getPurchaseIds().toArray()),
+					new TransactionList<>(Sale.class, transactions, partner.getSaleIds().toArray()),
+					new TransactionList<>(BreakdownTransaction.class, transactions,
+							partner.getBreakdownTransactionIds().toArray()));
+			partner.recomputeTotals();
+		}
+
+		// Note: Warehouses saved before notifications were logged don't have a log, so every partner
+		//       starts at the end of a new one, keeping the notifications they were already sent.
+		if (_notificationLog == null) {
+			_notificationLog = new NotificationLog();
+			for (var partner : partners) {
+				partner.setNotificationCursor(_notificationLog.addCursor());
+			}
+		}
+
+		var unpaidSales = partners.stream().flatMap(Partner::getSales).filter(sale -> !sale.isPaid())
+				.collect(Collectors.toList());
+		rebuildIndexes(partners, products, batches, unpaidSales);
+	}
+
+	/**
+	 * Rebuilds all of our transient fields
+	 * 
+	 * @param partners
+	 *            All partners
+	 * @param products
+	 *            All products
+	 * @param batches
+	 *            All batches, in order for each product
+	 * @param unpaidSales
+	 *            All unpaid sales
+	 */
+	private void rebuildIndexes(List<Partner> partners, List<Product> products, List<Batch> batches,
+			List<Sale> unpaidSales) {
+		_partners = new TreeMap<>();
+		for (var partner : partners) {
+			_partners.put(partner.getCollationKey(), partner);
+		}
+		_products = new TreeMap<>();
+		for (var product : products) {
+			_products.put(product.getCollationKey(), product);
+		}
+		// Note: Each product's batches are inserted all at once, which, as they're usually already sorted,
+		//       is linear on their number.
+		_batches = new SortedMultiMap<>(new BatchComparator());
+		var productBatches = batches.stream()
+				.collect(Collectors.groupingBy(Batch::getProduct, LinkedHashMap::new, Collectors.toList()));
+		productBatches.forEach(_batches::putAll);
+		_batchesByPrice = new TreeMap<>();
+		_batchesByPartner = new HashMap<>();
+		for (var batch : batches) {
+			indexBatch(batch);
+			batch.getProduct().addQuantity(batch.getQuantity());
+		}
+
+		_unpaidSales = new UnpaidSalesLedger();
+		for (var sale : unpaidSales) {
+			_unpaidSales.add(sale, _date);
+		}
 	}
 
 	/**
@@ -228,6 +422,12 @@ class Warehouse implements Serializable {
 		assert offset >= 0;
 		_date += offset;
 		assert _date >= 0;
+
+		// Then update the cost of any unpaid sales that changed
+		_unpaidSales.refresh(_date);
+
+		// And archive all sales settled long enough ago
+		store().archiveSettled(_date - ARCHIVE_SETTLED_DAYS);
 	}
 
 	/**
@@ -239,22 +439,65 @@ class Warehouse implements Serializable {
 		return _availableBalance;
 	}
 
+	/**
+	 * Retrieves the next transaction id
+	 * 
+	 * @return The id of the next transaction registered
+	 */
+	int getNextTransactionId() {
+		return _transactions.size();
+	}
+
+	/**
+	 * Retrieves the store of all transactions
+	 * 
+	 * @return The store of all transactions
+	 */
+	// Note: `_transactions` is always a store, it's only a list for serialization
+	private TransactionStore store() {
+		return (TransactionStore) _transactions;
+	}
+
+	/**
+	 * Retrieves the log of all notifications sent
+	 * 
+	 * @return The notification log
+	 */
+	NotificationLog getNotificationLog() {
+		return _notificationLog;
+	}
+
 	/**
 	 * Retrieves the accounting balance
 	 * 
 	 * @return The accounting balance
 	 */
 	double getAccountingBalance() {
-		return _availableBalance + _partners.values().stream() //
-				.flatMap(Partner::getSales) //
-				.filter(sale -> !sale.isPaid()) //
-				.mapToDouble(sale -> sale.getTotalCostAt(getDate())) //
-				.sum();
+		return _availableBalance + _unpaidSales.getTotal();
+	}
 
+	/**
+	 * Retrieves the total cost of all unpaid sales
+	 * 
+	 * @return The total cost of all unpaid sales
+	 */
+	double getUnpaidSalesTotal() {
+		return _unpaidSales.getTotal();
 	}
 
 	/**
-	 * Retrieves a stream over all products
+	 * Restores the total cost of all unpaid sales, as it was in the warehouse this one was read from
+	 * 
+	 * @param total
+	 *            The total cost of all unpaid sales
+	 */
+	// Note: The total is added up as sales change, so it's only the same as the original's if restored
+	void restoreUnpaidSalesTotal(double total) {
+		_unpaidSales.restoreTotal(total);
+	}
+
+	/**
+	 * Retrieves a stream over all products, in collation order of their ids
 	 * 
 	 * @return All products
 	 */
@@ -262,6 +505,30 @@ class Warehouse implements Serializable {
 		return _products.values().stream();
 	}
 
+	/**
+	 * Retrieves a stream over all products with ids in a range, in collation order of their ids
+	 * 
+	 * @param fromId
+	 *            The (inclusive) lower bound of the ids
+	 * @param toId
+	 *            The (exclusive) upper bound of the ids
+	 * @return All products in the range, or none if the bounds are reversed
+	 */
+	Stream<Product> getProducts(String fromId, String toId) {
+		return registryInRange(_products, fromId, toId);
+	}
+
+	/**
+	 * Retrieves a stream over all products whose ids start with `prefix`, in collation order of their ids
+	 * 
+	 * @param prefix
+	 *            The prefix of the ids
+	 * @return All products with the prefix
+	 */
+	Stream<Product> getProductsWithPrefix(String prefix) {
+		return registryWithPrefix(_products, Product::getId, prefix);
+	}
+
 	/**
 	 * Retrieves a product given it's id
 	 * 
@@ -283,14 +550,13 @@ class Warehouse implements Serializable {
 	 *             If the product already exists
 	 */
 	Product registerProduct(String productId) throws ProductAlreadyExistsException {
-		// If we already had the product, throw
-		if (getProduct(productId).isPresent()) {
+		// Create the product and insert it, if we didn't already have it
+		// Note: We don't check with `getProduct` first so we only build the collation key once.
+		var product = new Product(productId);
+		if (_products.putIfAbsent(product.getCollationKey(), product) != null) {
 			throw new ProductAlreadyExistsException(productId);
 		}
 
-		// Else create it, insert it and return
-		var product = new Product(productId);
-		_products.put(getCollationKey(productId), product);
 		return product;
 	}
 
@@ -320,8 +586,32 @@ class Warehouse implements Serializable {
 
 		// Else create the product, insert it and return
 		var recipe = Recipe.fromProductIds(recipeProductIdQuantities, this::getProduct);
+		return registerDerivedProduct(productId, costFactor, recipe);
+	}
+
+	/**
+	 * Registers a derived product
+	 * 
+	 * @param productId
+	 *            The product id
+	 * @param costFactor
+	 *            The product cost factor
+	 * @param recipe
+	 *            The recipe of the product
+	 * 
+	 * @return The created product
+	 * @throws ProductAlreadyExistsException
+	 *             If the product already exists
+	 */
+	private Product registerDerivedProduct(String productId, double costFactor, Recipe recipe)
+			throws ProductAlreadyExistsException {
+		// If we already had the product, throw
+		if (getProduct(productId).isPresent()) {
+			throw new ProductAlreadyExistsException(productId);
+		}
+
 		var product = new DerivedProduct(productId, recipe, costFactor);
-		_products.put(getCollationKey(productId), product);
+		_products.put(product.getCollationKey(), product);
 		return product;
 	}
 
@@ -342,7 +632,29 @@ class Warehouse implements Serializable {
 	 * @return All batches
 	 */
 	Stream<Batch> getBatchesForProduct(Product product) {
-		return _batches.get(product).map(List::stream).orElseGet(Stream::empty);
+		return _batches.get(product).map(Collection::stream).orElseGet(Stream::empty);
+	}
+
+	/**
+	 * Retrieves a stream over all batches supplied by a partner
+	 * 
+	 * @param partner
+	 *            The partner
+	 * @return All batches
+	 */
+	Stream<Batch> getBatchesForPartner(Partner partner) {
+		return _batchesByPartner.getOrDefault(partner, Set.of()).stream();
+	}
+
+	/**
+	 * Retrieves a stream over all batches with a unit price under `price`, ordered by unit price
+	 * 
+	 * @param price
+	 *            The (exclusive) upper bound of the unit price
+	 * @return All batches under the price
+	 */
+	Stream<Batch> getBatchesUnderPrice(double price) {
+		return _batchesByPrice.headMap(price, false).values().stream().flatMap(Set::stream);
 	}
 
 	/**
@@ -352,15 +664,92 @@ class Warehouse implements Serializable {
 	 *            The batch to insert
 	 */
 	private void insertBatch(Batch batch) {
-		// Insert the batch
+		// Insert the batch and add it's quantity to the product
 		Product product = batch.getProduct();
 		_batches.put(product, batch);
+		indexBatch(batch);
+		product.addQuantity(batch.getQuantity());
 
 		// Then update the min/max price
 		double unitPrice = batch.getUnitPrice();
 		updateProductMinMaxPrice(product, unitPrice);
 	}
 
+	/**
+	 * Inserts many new batches at once, as if inserted in order one at a time
+	 * 
+	 * @param batches
+	 *            The batches to insert, in order
+	 */
+	private void insertBatches(List<Batch> batches) {
+		// Group all batches by product, indexing them in order
+		var productBatches = new LinkedHashMap<Product, List<Batch>>();
+		for (var batch : batches) {
+			productBatches.computeIfAbsent(batch.getProduct(), _product -> new ArrayList<>()).add(batch);
+			indexBatch(batch);
+		}
+
+		// Then insert each product's batches all at once, adding their quantity and updating the min/max price
+		for (var entry : productBatches.entrySet()) {
+			var product = entry.getKey();
+			_batches.putAll(product, entry.getValue());
+
+			int quantity = 0;
+			double minPrice = Double.POSITIVE_INFINITY;
+			double maxPrice = Double.NEGATIVE_INFINITY;
+			for (var batch : entry.getValue()) {
+				quantity += batch.getQuantity();
+				minPrice = Math.min(minPrice, batch.getUnitPrice());
+				maxPrice = Math.max(maxPrice, batch.getUnitPrice());
+			}
+			product.addQuantity(quantity);
+			updateProductMinMaxPrice(product, minPrice);
+			updateProductMinMaxPrice(product, maxPrice);
+		}
+	}
+
+	/**
+	 * Removes a batch
+	 * 
+	 * @param batch
+	 *            The batch to remove
+	 */
+	private void removeBatch(Batch batch) {
+		_batches.remove(batch.getProduct(), batch);
+		unindexBatch(batch);
+	}
+
+	/**
+	 * Adds a batch to all batch indexes
+	 * 
+	 * @param batch
+	 *            The batch to add
+	 */
+	private void indexBatch(Batch batch) {
+		_batchesByPrice.computeIfAbsent(batch.getUnitPrice(), _price -> new LinkedHashSet<>()).add(batch);
+		_batchesByPartner.computeIfAbsent(batch.getPartner(), _partner -> new LinkedHashSet<>()).add(batch);
+	}
+
+	/**
+	 * Removes a batch from all batch indexes
+	 * 
+	 * @param batch
+	 *            The batch to remove
+	 */
+	private void unindexBatch(Batch batch) {
+		var priceBatches = _batchesByPrice.get(batch.getUnitPrice());
+		priceBatches.remove(batch);
+		if (priceBatches.isEmpty()) {
+			_batchesByPrice.remove(batch.getUnitPrice());
+		}
+
+		var partnerBatches = _batchesByPartner.get(batch.getPartner());
+		partnerBatches.remove(batch);
+		if (partnerBatches.isEmpty()) {
+			_batchesByPartner.remove(batch.getPartner());
+		}
+	}
+
 	/**
 	 * Updates a product's min/max price
 	 * 
@@ -381,7 +770,7 @@ class Warehouse implements Serializable {
 	}
 
 	/**
-	 * Retrieves a stream over all partners
+	 * Retrieves a stream over all partners, in collation order of their ids
 	 * 
 	 * @return All partners
 	 */
@@ -389,6 +778,30 @@ class Warehouse implements Serializable {
 		return _partners.values().stream();
 	}
 
+	/**
+	 * Retrieves a stream over all partners with ids in a range, in collation order of their ids
+	 * 
+	 * @param fromId
+	 *            The (inclusive) lower bound of the ids
+	 * @param toId
+	 *            The (exclusive) upper bound of the ids
+	 * @return All partners in the range, or none if the bounds are reversed
+	 */
+	Stream<Partner> getPartners(String fromId, String toId) {
+		return registryInRange(_partners, fromId, toId);
+	}
+
+	/**
+	 * Retrieves a stream over all partners whose ids start with `prefix`, in collation order of their ids
+	 * 
+	 * @param prefix
+	 *            The prefix of the ids
+	 * @return All partners with the prefix
+	 */
+	Stream<Partner> getPartnersWithPrefix(String prefix) {
+		return registryWithPrefix(_partners, Partner::getId, prefix);
+	}
+
 	/**
 	 * Retrieves a partner given it's id
 	 * 
@@ -447,14 +860,15 @@ class Warehouse implements Serializable {
 	 *             If the partner already exists
 	 */
 	Partner registerPartner(String id, String name, String address) throws PartnerAlreadyExistsException {
-		// If we already had the partner, throw
-		if (getPartner(id).isPresent()) {
+		// Create the partner and insert it, if we didn't already have them
+		// Note: We don't check with `getPartner` first so we only build the collation key once.
+		var partner = new Partner(id, name, address, _transactions);
+		if (_partners.putIfAbsent(partner.getCollationKey(), partner) != null) {
 			throw new PartnerAlreadyExistsException(id);
 		}
 
-		// Else create it, insert it and return
-		var partner = new Partner(id, name, address);
-		_partners.put(getCollationKey(id), partner);
+		// Then start it's notifications from now
+		partner.setNotificationCursor(_notificationLog.addCursor());
 		return partner;
 	}
 
@@ -467,9 +881,39 @@ class Warehouse implements Serializable {
 	 *            The product to toggle notifications for
 	 */
 	void togglePartnerNotifications(Partner partner, Product product) {
+		// Note: We read all notifications before toggling, as they were sent
+		//       while the previous blacklist was in effect.
+		readPartnerNotifications(partner);
 		partner.toggleIsProductNotificationBlacklisted(product);
 	}
 
+	/**
+	 * Clears all pending notifications from a partner and returns them
+	 * 
+	 * @param partner
+	 *            The partner to clear notifications
+	 * @return All pending notifications
+	 */
+	List<Notification> clearPendingPartnerNotifications(Partner partner) {
+		readPartnerNotifications(partner);
+		return partner.clearPendingNotifications();
+	}
+
+	/**
+	 * Reads all unread notifications of a partner from the log onto their pending notifications
+	 * 
+	 * @param partner
+	 *            The partner to read notifications for
+	 */
+	private void readPartnerNotifications(Partner partner) {
+		for (var notification : _notificationLog.read(partner.getNotificationCursor())) {
+			if (!partner.isProductNotificationBlacklisted(notification.getBatch().getProduct())) {
+				partner.addNotifications(notification);
+			}
+		}
+		partner.setNotificationCursor(_notificationLog.getEndSequence());
+	}
+
 	/**
 	 * Retrieves a stream over all transactions
 	 * 
@@ -479,6 +923,15 @@ class Warehouse implements Serializable {
 		return _transactions.stream();
 	}
 
+	/**
+	 * Retrieves a stream over all unpaid sales, in no particular order
+	 * 
+	 * @return All unpaid sales
+	 */
+	Stream<Sale> getUnpaidSales() {
+		return _unpaidSales.getSales();
+	}
+
 	/**
 	 * Retrieves a transaction given it's id
 	 * 
@@ -513,10 +966,9 @@ class Warehouse implements Serializable {
 		insertBatch(batch);
 
 		// Then create the transaction for it
-		var purchase = new Purchase(_nextTransactionId, _date, product, partner, quantity, quantity * unitPrice);
-		_nextTransactionId++;
+		var purchase = new Purchase(store().allocateId(), _date, product, partner, quantity, quantity * unitPrice);
+		store().publish(purchase);
 		partner.addPurchase(purchase);
-		_transactions.add(purchase);
 
 		// And update our balance
 		_availableBalance -= unitPrice * quantity;
@@ -545,11 +997,8 @@ class Warehouse implements Serializable {
 	 * 
 	 */
 	private void sendNotifications(Notification notification) {
-		for (var partner : _partners.values()) {
-			if (!partner.isProductNotificationBlacklisted(notification.getBatch().getProduct())) {
-				partner.addNotifications(notification);
-			}
-		}
+		// Note: Each partner skips the products they have blacklisted when reading from the log
+		_notificationLog.append(notification);
 	}
 
 	/**
@@ -569,14 +1018,55 @@ class Warehouse implements Serializable {
 	 */
 	Sale registerSale(Partner partner, Product product, int quantity, int deadline)
 			throws InsufficientProductsException {
-		// Remove `quantity` of `product`
-		var totalPrice = removeProduct(product, quantity);
+		return commitSale(partner, product, quantity, deadline, takeProduct(product, quantity));
+	}
+
+	/**
+	 * Takes a quantity of a product from stock for a sale, manufacturing if not enough exist
+	 * 
+	 * Only the products in the product's bill of materials are changed, so products that don't share any may be
+	 * taken concurrently. The sale must then be registered with `commitSale`.
+	 * 
+	 * @param product
+	 *            The product to take
+	 * @param quantity
+	 *            The quantity to take
+	 * @return The total price of all products taken, along with all batches emptied
+	 * @throws InsufficientProductsException
+	 *             If there isn't enough quantity of the product
+	 */
+	Pair<Double, List<Batch>> takeProduct(Product product, int quantity) throws InsufficientProductsException {
+		var emptyBatches = new ArrayList<Batch>();
+		var totalPrice = removeProduct(product, quantity, emptyBatches);
+		return new Pair<>(totalPrice, emptyBatches);
+	}
+
+	/**
+	 * Registers a new sale of a quantity of product taken by `takeProduct`
+	 * 
+	 * @param partner
+	 *            The sale's partner
+	 * @param product
+	 *            The sale's product
+	 * @param quantity
+	 *            The sale's quantity
+	 * @param deadline
+	 *            The sale's deadline
+	 * @param taken
+	 *            The total price of all products taken, along with all batches emptied
+	 * @return The sale
+	 */
+	// Note: Emptied batches are only removed here, as the batch indexes are shared by all products
+	Sale commitSale(Partner partner, Product product, int quantity, int deadline, Pair<Double, List<Batch>> taken) {
+		for (var batch : taken.getRhs()) {
+			removeBatch(batch);
+		}
 
 		// And create the sale
-		var sale = new Sale(_nextTransactionId, product, partner, quantity, totalPrice, deadline);
-		_nextTransactionId++;
+		var sale = new Sale(store().allocateId(), product, partner, quantity, taken.getLhs(), deadline);
+		store().publish(sale);
 		partner.addSale(sale);
-		_transactions.add(sale);
+		_unpaidSales.add(sale, _date);
 
 		return sale;
 	}
@@ -600,6 +1090,11 @@ class Warehouse implements Serializable {
 			var amountPaid = partner.paySale(sale, getDate());
 
 			_availableBalance += amountPaid;
+
+			// Then remove it from the unpaid sales and update the partner's other sales,
+			// as their status might have changed
+			_unpaidSales.remove(sale);
+			_unpaidSales.refreshPartner(partner, _date);
 		}
 	}
 
@@ -619,14 +1114,19 @@ class Warehouse implements Serializable {
 	BreakdownTransaction registerBreakdown(Partner partner, DerivedProduct product, int quantity)
 			throws InsufficientProductsException {
 		// If we don't have `quantity` products, throw
-		var quantityAvailable = _batches.get(product).get().stream().mapToInt(Batch::getQuantity).sum();
+		var quantityAvailable = productTotalQuantity(product);
 		if (quantityAvailable < quantity) {
 			throw new InsufficientProductsException(product.getId(), quantity, quantityAvailable);
 		}
 
 		// Else remove the quantity of product, and add all components
 		// Note: `removeProduct` here won't manufacture any, since we know we have enough in stock
-		double totalPrice = removeProduct(product, quantity);
+		var emptyBatches = new ArrayList<Batch>();
+		double totalPrice = removeProduct(product, quantity, emptyBatches);
+		for (var batch : emptyBatches) {
+			removeBatch(batch);
+		}
+
 		var components = new ArrayList<Pair<Product, Pair<Integer, Double>>>();
 		for (var pair : streamIt(product.getRecipe().getProductQuantities())) {
 			var recipeProduct = pair.getLhs();
@@ -636,7 +1136,7 @@ class Warehouse implements Serializable {
 			// Get the price to create the new batch with
 			// Note: If the product was introduced without any batches, we throw.
 			var recipeUnitPrice = _batches.get(recipeProduct).stream() //
-					.flatMap(List::stream) //
+					.flatMap(Collection::stream) //
 					.map(Batch::getUnitPrice) //
 					.findFirst() //
 					.orElseGet(() -> recipeProduct //
@@ -655,15 +1155,17 @@ class Warehouse implements Serializable {
 		}
 
 		// And create the sale
-		var sale = new BreakdownTransaction(_nextTransactionId, _date, product, partner, quantity, totalPrice,
+		var sale = new BreakdownTransaction(store().allocateId(), _date, product, partner, quantity, totalPrice,
 				components);
-		_nextTransactionId++;
+		store().publish(sale);
 		partner.addBreakdownTransaction(sale);
-		_transactions.add(sale);
 
 		// Then update our balance
 		_availableBalance += sale.getPaidCost();
 
+		// And update the partner's unpaid sales, as their status might have changed
+		_unpaidSales.refreshPartner(partner, _date);
+
 		return sale;
 	}
 
@@ -674,116 +1176,164 @@ class Warehouse implements Serializable {
 	 *            The product to remove
 	 * @param quantity
 	 *            The quantity to remove
+	 * @param emptyBatches
+	 *            Collects all batches emptied, which are left for the caller to remove
 	 * @return The total price of all products removed
 	 * @throws InsufficientProductsException
 	 *             If there weren't enough products to remove
 	 */
-	private double removeProduct(Product product, int quantity) throws InsufficientProductsException {
+	private double removeProduct(Product product, int quantity, List<Batch> emptyBatches)
+			throws InsufficientProductsException {
 		// If we're removing 0, return
 		assert quantity >= 0;
 		if (quantity == 0) {
 			return 0.0;
 		}
 
-		// Check that we have enough products
-		assertProductQuantity(product, quantity);
+		// Plan where each product comes from, checking that we have enough of everything,
+		// and only then remove them.
+		var plan = new SupplyPlan(product, quantity);
+		return applySupplyPlan(plan, emptyBatches);
+	}
 
-		// Go through all batches involving this product
-		var batches = _batches.get(product);
-		var totalPrice = 0.0;
-		var curQuantity = 0;
-		if (batches.isPresent()) {
-			for (var batch : batches.get()) {
-				// If we have enough, stop removing
-				if (curQuantity == quantity) {
-					break;
-				}
+	/**
+	 * Applies a supply plan, removing and manufacturing all of it's products
+	 * 
+	 * @param plan
+	 *            The plan to apply
+	 * @param emptyBatches
+	 *            Collects all batches emptied
+	 * @return The total price of the product supplied
+	 */
+	private double applySupplyPlan(SupplyPlan plan, List<Batch> emptyBatches) {
+		// Go through all components, after all of their own components, so we know the price each recipe pays for them
+		// Note: Components shared by multiple recipes are taken cheapest first by each recipe, in the order the
+		//       recipes are visited, from stock before any manufactured.
+		var products = plan.getProducts();
+		var componentPrices = new HashMap<Product, Map<Product, Double>>();
+		for (int productIdx = products.size() - 1; productIdx > 0; productIdx--) {
+			var product = products.get(productIdx);
+			var units = supplyProduct(plan, product, componentPrices, emptyBatches);
+			for (var claim : plan.getClaims(product)) {
+				componentPrices.computeIfAbsent(claim.getLhs(), _product -> new HashMap<>()) //
+						.put(product, takeUnits(units, claim.getRhs()));
+			}
+		}
 
-				// Take at most what we need or however much the batch has.
-				int batchQuantity = Math.min(quantity - curQuantity, batch.getQuantity());
+		// Then the product being supplied, which takes all of it's units
+		var product = plan.getProduct();
+		var units = supplyProduct(plan, product, componentPrices, emptyBatches);
+		return takeUnits(units, plan.getTakenQuantity(product) + plan.getManufacturedQuantity(product));
+	}
 
-				// Then remove them and update our quantity and price
-				totalPrice += batchQuantity * batch.getUnitPrice();
-				curQuantity += batchQuantity;
-				batch.takeQuantity(batchQuantity);
+	/**
+	 * Removes and manufactures a product of a supply plan
+	 * 
+	 * @param plan
+	 *            The plan
+	 * @param product
+	 *            The product, after all of it's components
+	 * @param componentPrices
+	 *            The price paid by each recipe for each of it's components
+	 * @param emptyBatches
+	 *            Collects all batches emptied
+	 * @return The quantity and total price of the units removed from each batch, cheapest first, followed by the ones
+	 *         manufactured
+	 */
+	private Deque<Pair<Integer, Double>> supplyProduct(SupplyPlan plan, Product product,
+			Map<Product, Map<Product, Double>> componentPrices, List<Batch> emptyBatches) {
+		var units = removeProductFromStock(product, plan.getTakenQuantity(product), emptyBatches);
+
+		// If we need to manufacture any, remove all components of the recipe
+		var manufacturedQuantity = plan.getManufacturedQuantity(product);
+		if (manufacturedQuantity > 0) {
+			var derivedProduct = product.getAsDerived().get();
+			var recipe = derivedProduct.getRecipe();
+			double componentsPrice = 0.0;
+			for (var component : recipe.getProducts()) {
+				componentsPrice += componentPrices.get(product).get(component);
 			}
 
-			// Then remove all empty batches
-			batches.get().removeIf(batch -> batch.getQuantity() == 0);
-		}
-
-		// If we didn't have enough, manufacture them
-		// Note: Given that we asserted we had enough quantity above, if we don't
-		//       have enough quantity currently, we know that there's enough quantity
-		//       to manufacture it here, and that the product is derived.
-		var remainingQuantity = quantity - curQuantity;
-		if (remainingQuantity > 0) {
-			var manufacturePrice = removeProductRecipeComponents(product.getAsDerived().get(), remainingQuantity);
-			totalPrice += manufacturePrice;
+			var manufacturePrice = (1.0 + derivedProduct.getCostFactor()) * componentsPrice;
+			units.add(new Pair<>(manufacturedQuantity, manufacturePrice));
 
 			// Update the product's min/max price
-			updateProductMinMaxPrice(product, manufacturePrice / remainingQuantity);
+			updateProductMinMaxPrice(product, manufacturePrice / manufacturedQuantity);
 		}
 
-		return totalPrice;
+		return units;
 	}
 
 	/**
-	 * Asserts that there are enough quantity of `product` to supply, including possibly manufacturing.
+	 * Takes a quantity of units, in order
 	 * 
-	 * @param product
-	 *            The product to check
+	 * @param units
+	 *            The quantity and total price of each group of units, in order
 	 * @param quantity
-	 *            The minimum quantity
-	 * @throws InsufficientProductsException
-	 *             If there aren't enough products
+	 *            The quantity to take, at most the quantity of all units
+	 * @return The total price of the units taken
 	 */
-	private void assertProductQuantity(Product product, int quantity) throws InsufficientProductsException {
-		// If we have enough quantity, return
-		var quantityAvailable = _batches.get(product).get().stream().mapToInt(Batch::getQuantity).sum();
-		if (quantityAvailable >= quantity) {
-			return;
-		}
-
-		// Else get the product as a derived one, or throw given that we can't manufacture it, otherwise
-		var derivedProduct = product.getAsDerived()
-				.orElseThrow(() -> new InsufficientProductsException(product.getId(), quantity, quantityAvailable));
-
-		// Finally check if there's enough of each component to manufacture enough product
-		int quantityRemaining = quantity - quantityAvailable;
-		for (var pair : streamIt(derivedProduct.getRecipe().getProductQuantities())) {
-			var recipeProduct = pair.getLhs();
-			var recipeUnitQuantity = pair.getRhs();
-			var recipeQuantity = quantityRemaining * recipeUnitQuantity;
+	private static double takeUnits(Deque<Pair<Integer, Double>> units, int quantity) {
+		double price = 0.0;
+		while (quantity > 0) {
+			var unit = units.removeFirst();
+
+			// If we only need some of the group, take our share of it's price and leave the rest
+			if (unit.getLhs() > quantity) {
+				double partPrice = unit.getRhs() * quantity / unit.getLhs();
+				units.addFirst(new Pair<>(unit.getLhs() - quantity, unit.getRhs() - partPrice));
+				return price + partPrice;
+			}
 
-			assertProductQuantity(recipeProduct, recipeQuantity);
+			price += unit.getRhs();
+			quantity -= unit.getLhs();
 		}
+
+		return price;
 	}
 
 	/**
-	 * Removes all components of the recipe of a product
+	 * Removes a quantity of a product from it's batches, cheapest first
 	 * 
 	 * @param product
 	 *            The product to remove
 	 * @param quantity
-	 *            The quantity to remove
-	 * @return The total price of all products removed
-	 * @throws InsufficientProductsException
-	 *             If there weren't enough products to remove
+	 *            The quantity to remove, at most the quantity in stock
+	 * @param emptyBatches
+	 *            Collects all batches emptied
+	 * @return The quantity and total price removed from each batch, cheapest first
 	 */
-	private double removeProductRecipeComponents(DerivedProduct product, int quantity)
-			throws InsufficientProductsException {
-		// Go through all products of the recipe
-		double totalPrice = 0;
-		for (var pair : streamIt(product.getRecipe().getProductQuantities())) {
-			var recipeProduct = pair.getLhs();
-			var recipeUnitQuantity = pair.getRhs();
-			var recipeQuantity = quantity * recipeUnitQuantity;
+	private Deque<Pair<Integer, Double>> removeProductFromStock(Product product, int quantity,
+			List<Batch> emptyBatches) {
+		assert quantity <= productTotalQuantity(product);
+
+		// Go through all batches involving this product
+		var batches = _batches.get(product);
+		var units = new ArrayDeque<Pair<Integer, Double>>();
+		var curQuantity = 0;
+		if (batches.isPresent()) {
+			for (var batch : batches.get()) {
+				// If we have enough, stop removing
+				if (curQuantity == quantity) {
+					break;
+				}
 
-			totalPrice += removeProduct(recipeProduct, recipeQuantity);
+				// Take at most what we need or however much the batch has.
+				int batchQuantity = Math.min(quantity - curQuantity, batch.getQuantity());
+
+				// Then remove them and update our quantity and price
+				units.add(new Pair<>(batchQuantity, batchQuantity * batch.getUnitPrice()));
+				curQuantity += batchQuantity;
+				batch.takeQuantity(batchQuantity);
+
+				// Note: Empty batches are removed by the caller, before any other removal from this product
+				if (batch.getQuantity() == 0) {
+					emptyBatches.add(batch);
+				}
+			}
 		}
 
-		return (1.0 + product.getCostFactor()) * totalPrice;
+		return units;
 	}
 
 	/**
@@ -794,11 +1344,8 @@ class Warehouse implements Serializable {
 	 * @return The quantity of the product
 	 */
 	int productTotalQuantity(Product product) {
-		return _batches.get(product) //
-				.map(batches -> batches.stream() //
-						.mapToInt(Batch::getQuantity) //
-						.sum() //
-				).orElse(0);
+		// Note: The product keeps track of it's own quantity as batches are inserted and taken from
+		return product.getQuantity();
 	}
 
 	/**
@@ -807,7 +1354,7 @@ class Warehouse implements Serializable {
 	 * @return A product comparator by id
 	 */
 	Comparator<Product> productComparator() {
-		return Comparator.comparing(product -> getCollationKey(product.getId()));
+		return Comparator.comparing(Product::getCollationKey);
 	}
 
 	/**
@@ -816,8 +1363,8 @@ class Warehouse implements Serializable {
 	 * @return A batch comparator
 	 */
 	Comparator<Batch> batchComparator() {
-		return Comparator.<Batch, CollationKey>comparing(batch -> getCollationKey(batch.getProduct().getId()))
-				.thenComparing(batch -> getCollationKey(batch.getPartner().getId())).thenComparing(Batch::getUnitPrice)
+		return Comparator.<Batch, SortKey>comparing(batch -> batch.getProduct().getCollationKey())
+				.thenComparing(batch -> batch.getPartner().getCollationKey()).thenComparing(Batch::getUnitPrice)
 				.thenComparing(Batch::getQuantity);
 	}
 
@@ -861,7 +1408,7 @@ class Warehouse implements Serializable {
 	 */
 	Comparator<Partner> partnerComparator() {
 		// Note: Id is unique, so we don't need to compare by anything else
-		return Comparator.comparing(partner -> getCollationKey(partner.getId()));
+		return Comparator.comparing(Partner::getCollationKey);
 	}
 
 	/**
@@ -0,0 +1,188 @@
+package ggc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import ggc.core.util.BlockCompression;
+import ggc.core.util.SnapshotInput;
+import ggc.core.util.SnapshotOutput;
+import ggc.core.util.SortKey;
+
+/**
+ * Index of a snapshot, saved alongside it.
+ * 
+ * Holds everything derived from a snapshot that's expensive to rebuild when reading it, currently the collation key
+ * of each product and partner, in the order they're in the snapshot. The index records the size and checksum of the
+ * snapshot it was written with, as it's stored, so an index left behind by an older snapshot is never used, and it's
+ * checked without decompressing the snapshot.
+ */
+// Note: Package private because we don't need it outside of core
+class WarehouseIndex {
+	/** Magic number at the start of all indexes */
+	private static final int MAGIC = 0x4747_4349;
+
+	/** Version of the index format */
+	private static final int VERSION = 2;
+
+	/** Collation key of each product, in snapshot order */
+	private List<SortKey> _productKeys;
+
+	/** Collation key of each partner, in snapshot order */
+	private List<SortKey> _partnerKeys;
+
+	/**
+	 * Creates an index
+	 * 
+	 * @param productKeys
+	 *            The collation key of each product, in snapshot order
+	 * @param partnerKeys
+	 *            The collation key of each partner, in snapshot order
+	 */
+	WarehouseIndex(List<SortKey> productKeys, List<SortKey> partnerKeys) {
+		_productKeys = productKeys;
+		_partnerKeys = partnerKeys;
+	}
+
+	/**
+	 * Retrieves the path of the index of a snapshot file
+	 * 
+	 * @param path
+	 *            The path of the snapshot file
+	 * @return The path of it's index
+	 */
+	static Path pathOf(Path path) {
+		return path.resolveSibling(path.getFileName() + ".idx");
+	}
+
+	/**
+	 * Encodes this index
+	 * 
+	 * @param snapshot
+	 *            The snapshot this index is of, as it's stored, from it's position to it's limit
+	 * @return The encoded index
+	 */
+	// Note: Compressed, so it's also checked against corruption when decoding
+	ByteBuffer encode(ByteBuffer snapshot) {
+		var bytes = new ByteArrayOutputStream();
+		try (var out = new SnapshotOutput(Channels.newChannel(bytes))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(snapshot.remaining());
+			out.writeInt(checksum(snapshot));
+			out.writeInt(_productKeys.size());
+			out.writeInt(_partnerKeys.size());
+			out.endRecord();
+
+			for (var key : _productKeys) {
+				out.writeBytes(key.toByteArray());
+				out.endRecord();
+			}
+			for (var key : _partnerKeys) {
+				out.writeBytes(key.toByteArray());
+				out.endRecord();
+			}
+		} catch (IOException e) {
+			// Note: We only ever write to memory, so this can't happen
+			throw new UncheckedIOException(e);
+		}
+
+		return BlockCompression.compress(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Decodes an index, checking it's of a snapshot
+	 * 
+	 * @param index
+	 *            The encoded index
+	 * @param snapshot
+	 *            The snapshot, as it's stored, from it's position, possibly followed by anything else
+	 * @return The index
+	 * @throws IOException
+	 *             If the index is corrupt, or isn't of the snapshot
+	 */
+	static WarehouseIndex decode(ByteBuffer index, ByteBuffer snapshot) throws IOException {
+		var in = new SnapshotInput(BlockCompression.decompress(index));
+		in.nextRecord();
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a warehouse index");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported index version " + version);
+		}
+
+		long snapshotSize = in.readLong();
+		int snapshotChecksum = in.readInt();
+		if (snapshotSize < 0 || snapshotSize > snapshot.remaining()
+				|| checksum(snapshot.slice(snapshot.position(), (int) snapshotSize)) != snapshotChecksum) {
+			throw new IOException("Index isn't of the snapshot");
+		}
+
+		int productsCount = in.readInt();
+		int partnersCount = in.readInt();
+		if (productsCount < 0 || partnersCount < 0) {
+			throw new IOException("Corrupt index: Bad counts");
+		}
+		return new WarehouseIndex(readKeys(in, productsCount), readKeys(in, partnersCount));
+	}
+
+	/**
+	 * Reads collation keys, each on it's own record
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param count
+	 *            The number of keys
+	 * @return The keys
+	 * @throws IOException
+	 *             If unable to read
+	 */
+	private static List<SortKey> readKeys(SnapshotInput in, int count) throws IOException {
+		var keys = new ArrayList<SortKey>();
+		for (int keyIdx = 0; keyIdx < count; keyIdx++) {
+			in.nextRecord();
+			keys.add(new SortKey(in.readBytes()));
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Retrieves the checksum of a snapshot
+	 * 
+	 * @param snapshot
+	 *            The snapshot, from it's position to it's limit
+	 * @return The checksum
+	 */
+	private static int checksum(ByteBuffer snapshot) {
+		var checksum = new CRC32C();
+		checksum.update(snapshot.duplicate());
+		return (int) checksum.getValue();
+	}
+
+	/**
+	 * Restores the collation keys of all products and partners read from the snapshot
+	 * 
+	 * @param products
+	 *            All products, in snapshot order
+	 * @param partners
+	 *            All partners, in snapshot order
+	 */
+	// Note: The checksum ensures the snapshot is the one the index was written with, so they always match
+	void restore(List<Product> products, List<Partner> partners) {
+		assert products.size() == _productKeys.size() && partners.size() == _partnerKeys.size();
+
+		for (int productIdx = 0; productIdx < products.size(); productIdx++) {
+			products.get(productIdx).restoreCollationKey(_productKeys.get(productIdx));
+		}
+		for (int partnerIdx = 0; partnerIdx < partners.size(); partnerIdx++) {
+			partners.get(partnerIdx).restoreCollationKey(_partnerKeys.get(partnerIdx));
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package ggc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import ggc.core.exception.InsufficientProductsException;
+import ggc.core.exception.PartnerAlreadyExistsException;
+import ggc.core.exception.ProductAlreadyExistsException;
+import ggc.core.exception.UnknownProductIdException;
+import ggc.core.util.Pair;
+import ggc.core.util.SnapshotInput;
+import ggc.core.util.SnapshotOutput;
+
+/**
+ * Journal of all changes made to a warehouse.
+ * 
+ * Each change is recorded as a single record, in the same format as snapshots, which are kept until they're written
+ * after the snapshot they were made on. Replaying all records on top of the snapshot brings it back to the state the
+ * warehouse was in when they were written. Partners, products and transactions are referred to by their ids, as those
+ * never change.
+ */
+// Note: Package private because we don't need it outside of core
+class WarehouseJournal {
+	/** Record types */
+	private static final int RECORD_ADVANCE_DATE = 1;
+	private static final int RECORD_REGISTER_PARTNER = 2;
+	private static final int RECORD_REGISTER_PRODUCT = 3;
+	private static final int RECORD_REGISTER_DERIVED_PRODUCT = 4;
+	private static final int RECORD_REGISTER_PURCHASE = 5;
+	private static final int RECORD_REGISTER_SALE = 6;
+	private static final int RECORD_PAY_SALE = 7;
+	private static final int RECORD_REGISTER_BREAKDOWN = 8;
+	private static final int RECORD_TOGGLE_PARTNER_NOTIFICATIONS = 9;
+	private static final int RECORD_CLEAR_PARTNER_NOTIFICATIONS = 10;
+
+	/** All records not yet written */
+	private ByteArrayOutputStream _pending = new ByteArrayOutputStream();
+
+	/** Output for the records not yet written */
+	private SnapshotOutput _output = new SnapshotOutput(Channels.newChannel(_pending));
+
+	/** Ends the current record */
+	private void endRecord() {
+		try {
+			_output.endRecord();
+		} catch (IOException e) {
+			// Note: We only ever write to memory, so this can't happen
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Flushes all records onto `_pending` */
+	private void flush() {
+		try {
+			_output.flush();
+		} catch (IOException e) {
+			// Note: We only ever write to memory, so this can't happen
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Retrieves all records not yet written
+	 * 
+	 * @return All pending records
+	 */
+	ByteBuffer getPending() {
+		flush();
+		return ByteBuffer.wrap(_pending.toByteArray());
+	}
+
+	/**
+	 * Retrieves the size of all records not yet written
+	 * 
+	 * @return The size, in bytes, of all pending records
+	 */
+	long getPendingSize() {
+		flush();
+		return _pending.size();
+	}
+
+	/** Discards all records not yet written, after they've been written */
+	void clear() {
+		flush();
+		_pending.reset();
+	}
+
+	/**
+	 * Records advancing the date
+	 * 
+	 * @param offset
+	 *            The offset added to the date
+	 */
+	void recordAdvanceDate(int offset) {
+		_output.writeByte(RECORD_ADVANCE_DATE);
+		_output.writeInt(offset);
+		endRecord();
+	}
+
+	/**
+	 * Records registering a partner
+	 * 
+	 * @param partner
+	 *            The partner registered
+	 */
+	void recordRegisterPartner(Partner partner) {
+		_output.writeByte(RECORD_REGISTER_PARTNER);
+		_output.writeString(partner.getId());
+		_output.writeString(partner.getName());
+		_output.writeString(partner.getAddress());
+		endRecord();
+	}
+
+	/**
+	 * Records registering a product
+	 * 
+	 * @param product
+	 *            The product registered
+	 */
+	void recordRegisterProduct(Product product) {
+		var derivedProduct = product.getAsDerived();
+		if (derivedProduct.isEmpty()) {
+			_output.writeByte(RECORD_REGISTER_PRODUCT);
+			_output.writeString(product.getId());
+			endRecord();
+			return;
+		}
+
+		var recipe = derivedProduct.get().getRecipe();
+		_output.writeByte(RECORD_REGISTER_DERIVED_PRODUCT);
+		_output.writeString(product.getId());
+		_output.writeDouble(derivedProduct.get().getCostFactor());
+		_output.writeInt(recipe.getProducts().size());
+		for (var component : recipe.getProducts()) {
+			_output.writeString(component.getId());
+			_output.writeInt(recipe.getProductQuantity(component));
+		}
+		endRecord();
+	}
+
+	/**
+	 * Records registering a purchase
+	 * 
+	 * @param partner
+	 *            The purchase's partner
+	 * @param product
+	 *            The purchase's product
+	 * @param quantity
+	 *            The purchase's quantity
+	 * @param unitPrice
+	 *            The purchase's unit price
+	 */
+	void recordRegisterPurchase(Partner partner, Product product, int quantity, double unitPrice) {
+		_output.writeByte(RECORD_REGISTER_PURCHASE);
+		_output.writeString(partner.getId());
+		_output.writeString(product.getId());
+		_output.writeInt(quantity);
+		_output.writeDouble(unitPrice);
+		endRecord();
+	}
+
+	/**
+	 * Records registering a sale
+	 * 
+	 * @param partner
+	 *            The sale's partner
+	 * @param product
+	 *            The sale's product
+	 * @param quantity
+	 *            The sale's quantity
+	 * @param deadline
+	 *            The sale's deadline
+	 */
+	void recordRegisterSale(Partner partner, Product product, int quantity, int deadline) {
+		_output.writeByte(RECORD_REGISTER_SALE);
+		_output.writeString(partner.getId());
+		_output.writeString(product.getId());
+		_output.writeInt(quantity);
+		_output.writeInt(deadline);
+		endRecord();
+	}
+
+	/**
+	 * Records paying a transaction
+	 * 
+	 * @param transaction
+	 *            The transaction paid
+	 */
+	void recordPaySale(Transaction transaction) {
+		_output.writeByte(RECORD_PAY_SALE);
+		_output.writeInt(transaction.getId());
+		endRecord();
+	}
+
+	/**
+	 * Records registering a breakdown
+	 * 
+	 * @param partner
+	 *            The partner that requested the breakdown
+	 * @param product
+	 *            The product broken down
+	 * @param quantity
+	 *            The quantity of product broken down
+	 */
+	void recordRegisterBreakdown(Partner partner, Product product, int quantity) {
+		_output.writeByte(RECORD_REGISTER_BREAKDOWN);
+		_output.writeString(partner.getId());
+		_output.writeString(product.getId());
+		_output.writeInt(quantity);
+		endRecord();
+	}
+
+	/**
+	 * Records toggling a partner's product notifications
+	 * 
+	 * @param partner
+	 *            The partner
+	 * @param product
+	 *            The product
+	 */
+	void recordTogglePartnerNotifications(Partner partner, Product product) {
+		_output.writeByte(RECORD_TOGGLE_PARTNER_NOTIFICATIONS);
+		_output.writeString(partner.getId());
+		_output.writeString(product.getId());
+		endRecord();
+	}
+
+	/**
+	 * Records clearing a partner's pending notifications
+	 * 
+	 * @param partner
+	 *            The partner
+	 */
+	void recordClearPendingPartnerNotifications(Partner partner) {
+		_output.writeByte(RECORD_CLEAR_PARTNER_NOTIFICATIONS);
+		_output.writeString(partner.getId());
+		endRecord();
+	}
+
+	/**
+	 * Replays all remaining records onto a warehouse
+	 * 
+	 * @param in
+	 *            The input to read the records from
+	 * @param warehouse
+	 *            The warehouse to replay the records onto
+	 * @throws IOException
+	 *             If unable to read, or any record couldn't be replayed
+	 */
+	static void replay(SnapshotInput in, Warehouse warehouse) throws IOException {
+		while (in.hasRecord()) {
+			in.nextRecord();
+			try {
+				replayRecord(in, warehouse);
+			} catch (PartnerAlreadyExistsException | ProductAlreadyExistsException | UnknownProductIdException
+					| InsufficientProductsException e) {
+				throw new IOException("Corrupt journal: Unable to replay record", e);
+			}
+		}
+	}
+
+	/**
+	 * Replays the current record onto a warehouse
+	 * 
+	 * @param in
+	 *            The input to read the record from
+	 * @param warehouse
+	 *            The warehouse to replay the record onto
+	 * @throws IOException
+	 *             If unable to read, or the record is corrupt
+	 * @throws PartnerAlreadyExistsException
+	 *             If a registered partner already existed
+	 * @throws ProductAlreadyExistsException
+	 *             If a registered product already existed
+	 * @throws UnknownProductIdException
+	 *             If a product of a recipe didn't exist
+	 * @throws InsufficientProductsException
+	 *             If there weren't enough products for a sale or breakdown
+	 */
+	private static void replayRecord(SnapshotInput in, Warehouse warehouse) throws IOException,
+			PartnerAlreadyExistsException, ProductAlreadyExistsException, UnknownProductIdException,
+			InsufficientProductsException {
+		int type = in.readByte();
+		switch (type) {
+			case RECORD_ADVANCE_DATE:
+				warehouse.advanceDate(in.readInt());
+				break;
+
+			case RECORD_REGISTER_PARTNER:
+				warehouse.registerPartner(in.readString(), in.readString(), in.readString());
+				break;
+
+			case RECORD_REGISTER_PRODUCT:
+				warehouse.registerProduct(in.readString());
+				break;
+
+			case RECORD_REGISTER_DERIVED_PRODUCT: {
+				var productId = in.readString();
+				double costFactor = in.readDouble();
+				int componentsCount = in.readInt();
+				var recipeProductIdQuantities = new ArrayList<Pair<String, Integer>>(componentsCount);
+				for (int componentIdx = 0; componentIdx < componentsCount; componentIdx++) {
+					recipeProductIdQuantities.add(new Pair<>(in.readString(), in.readInt()));
+				}
+				warehouse.registerDerivedProduct(productId, costFactor, recipeProductIdQuantities.stream());
+				break;
+			}
+
+			case RECORD_REGISTER_PURCHASE:
+				warehouse.registerPurchase(readPartner(in, warehouse), readProduct(in, warehouse), in.readInt(),
+						in.readDouble());
+				break;
+
+			case RECORD_REGISTER_SALE:
+				warehouse.registerSale(readPartner(in, warehouse), readProduct(in, warehouse), in.readInt(),
+						in.readInt());
+				break;
+
+			case RECORD_PAY_SALE: {
+				int transactionId = in.readInt();
+				var transaction = warehouse.getTransaction(transactionId)
+						.orElseThrow(() -> new IOException("Corrupt journal: Unknown transaction " + transactionId));
+				warehouse.paySale(transaction);
+				break;
+			}
+
+			case RECORD_REGISTER_BREAKDOWN: {
+				var partner = readPartner(in, warehouse);
+				var product = readProduct(in, warehouse).getAsDerived()
+						.orElseThrow(() -> new IOException("Corrupt journal: Breakdown of a simple product"));
+				warehouse.registerBreakdown(partner, product, in.readInt());
+				break;
+			}
+
+			case RECORD_TOGGLE_PARTNER_NOTIFICATIONS:
+				warehouse.togglePartnerNotifications(readPartner(in, warehouse), readProduct(in, warehouse));
+				break;
+
+			case RECORD_CLEAR_PARTNER_NOTIFICATIONS:
+				warehouse.clearPendingPartnerNotifications(readPartner(in, warehouse));
+				break;
+
+			default:
+				throw new IOException("Corrupt journal: Bad record type " + type);
+		}
+	}
+
+	/**
+	 * Reads a partner by it's id
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param warehouse
+	 *            The warehouse with the partner
+	 * @return The partner
+	 * @throws IOException
+	 *             If unable to read, or the partner doesn't exist
+	 */
+	private static Partner readPartner(SnapshotInput in, Warehouse warehouse) throws IOException {
+		var partnerId = in.readString();
+		return warehouse.getPartner(partnerId)
+				.orElseThrow(() -> new IOException("Corrupt journal: Unknown partner " + partnerId));
+	}
+
+	/**
+	 * Reads a product by it's id
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param warehouse
+	 *            The warehouse with the product
+	 * @return The product
+	 * @throws IOException
+	 *             If unable to read, or the product doesn't exist
+	 */
+	private static Product readProduct(SnapshotInput in, Warehouse warehouse) throws IOException {
+		var productId = in.readString();
+		return warehouse.getProduct(productId)
+				.orElseThrow(() -> new IOException("Corrupt journal: Unknown product " + productId));
+	}
+}
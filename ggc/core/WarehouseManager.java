@@ -1,16 +1,37 @@
 package ggc.core;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 
 import ggc.core.exception.InsufficientProductsException;
 import ggc.core.exception.BadEntryException;
@@ -19,19 +40,102 @@ import ggc.core.exception.ParsingException;
 import ggc.core.exception.PartnerAlreadyExistsException;
 import ggc.core.exception.ProductAlreadyExistsException;
 import ggc.core.exception.UnknownProductIdException;
+import ggc.core.util.BlockCompression;
 import ggc.core.util.Pair;
+import ggc.core.util.SnapshotInput;
+import ggc.core.util.SnapshotOutput;
 
 /** Façade for access. */
 public class WarehouseManager {
 
+	/** Number of locks the stock of products is split into */
+	private static final int PRODUCT_LOCKS_COUNT = 16;
+
+	/** Executor for all saves in the background */
+	private static final Executor SAVE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		// Note: Daemon so we don't keep the application running, see `awaitPendingSaves`
+		var thread = new Thread(runnable, "warehouse-save");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** Lock of the warehouse, held by either many readers or a single writer */
+	// Note: Readers wait for any writer waiting before them, so that a writer isn't kept waiting
+	//       for as long as there are readers, and may read again while reading, such as when formatting.
+	// Note: Streams are collected while holding the lock, as they'd otherwise only be consumed
+	//       after it's released, possibly while the warehouse is being changed.
+	private ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+	/** Locks of the stock of all products, each one shared by all products in it's stripe */
+	// Note: Sales and purchases hold the lock of the warehouse as readers, and then the locks of the products
+	//       they change as writers, so those changing different products run concurrently. Readers of the
+	//       warehouse also hold all of these as readers, so they never see a sale or purchase half done.
+	// Note: Locks are always acquired in order, so that sales manufacturing from shared products don't deadlock.
+	private ReadWriteLock[] _productLocks = IntStream.range(0, PRODUCT_LOCKS_COUNT)
+			.mapToObj(_idx -> new ReentrantReadWriteLock()).toArray(ReadWriteLock[]::new);
+
+	/** Lock held while committing a sale or purchase to the warehouse, after changing the stock */
+	// Note: Only transaction ids, the balance and the journal are changed while holding it, so that changes
+	//       are journaled in the same order they're performed in, and replaying them reproduces the warehouse.
+	private Lock _commitLock = new ReentrantLock();
+
 	/** Name of file storing current warehouse. */
-	private Optional<String> _fileName = Optional.empty();
+	// Note: `volatile` as it's reset by the thread saving the warehouse in the background, if it fails
+	//       to save to a new file.
+	private volatile Optional<String> _fileName = Optional.empty();
 
 	/** The warehouse itself. */
-	private Warehouse _warehouse = new Warehouse();
+	// Note: `volatile` as it's transactions are retrieved without locking, see `getTransactions`
+	private volatile Warehouse _warehouse = new Warehouse();
+
+	/** Number of changes performed on the warehouse */
+	private long _modificationCount;
+
+	/** Number of changes performed on the warehouse when it was last saved */
+	// Note: `volatile` as it's set by the thread saving the warehouse in the background
+	private volatile long _savedModificationCount;
+
+	/** Completion of the last save started, which only starts after all saves before it */
+	// Note: `volatile` as it's waited on without locking, see `awaitPendingSaves`
+	private volatile CompletableFuture<Void> _lastSave = CompletableFuture.completedFuture(null);
+
+	/** If the last save written failed, possibly leaving the associated file incomplete */
+	// Note: `volatile` as it's set by the thread saving the warehouse in the background
+	private volatile boolean _lastSaveFailed;
+
+	/** File the last save written failed to write to, until retrieved by `clearFailedSave` */
+	// Note: `volatile` as it's set by the thread saving the warehouse in the background
+	private volatile Optional<String> _failedSaveFileName = Optional.empty();
+
+	/** Manager of the warehouse at the last version opened, along with the number of changes performed then */
+	// Note: Only weakly referenced, so it's reclaimed once all readers of the version close it.
+	// Note: `volatile` as it's replaced by readers while holding the lock as a reader, see `openVersion`
+	private volatile Optional<Pair<Long, WeakReference<WarehouseManager>>> _lastVersion = Optional.empty();
+
+	/** Journal of all changes performed on the warehouse since the last save */
+	private WarehouseJournal _journal = new WarehouseJournal();
+
+	/** Size of the snapshot in the associated file, before compression, if we can append the journal to it */
+	// Note: Empty if the file doesn't end with our latest changes, such as when it was saved before
+	//       snapshots were introduced, or the warehouse was changed without recording it.
+	private OptionalLong _snapshotSize = OptionalLong.empty();
 
-	/** If any changes were performed on the warehouse since the last save */
-	private boolean _warehouseIsDirty;
+	/** Size of the journal appended to the snapshot in the associated file */
+	private long _journalSize;
+
+	/** Creates a manager of a new, empty, warehouse */
+	public WarehouseManager() {
+	}
+
+	/**
+	 * Creates a manager of a warehouse
+	 * 
+	 * @param warehouse
+	 *            The warehouse
+	 */
+	private WarehouseManager(Warehouse warehouse) {
+		_warehouse = warehouse;
+	}
 
 	/**
 	 * Saves the file into the associated file, or, if inexistent, gets it from the supplier
@@ -42,15 +146,337 @@ public class WarehouseManager {
 	 *             If unable to save
 	 */
 	public void save(Supplier<? extends String> supplier) throws IOException {
+		try {
+			saveAsync(supplier).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Saves the file into the associated file, or, if inexistent, gets it from the supplier, in the background
+	 * <p>
+	 * All changes up until now are saved, and the warehouse may keep being changed while they're written. Saves are
+	 * written in the order they were started.
+	 * </p>
+	 * 
+	 * @param supplier
+	 *            The filename supplier, if none is associated
+	 * @return The completion of the save, completed exceptionally with an `IOException` if unable to save
+	 */
+	public CompletableFuture<Void> saveAsync(Supplier<? extends String> supplier) {
 		// Get our associated file, or use the supplier if we don't have it.
-		var fileName = _fileName.orElseGet(supplier);
+		// Note: The supplier is called before locking, as it may take a while, such as when asking the user.
+		var suppliedFileName = _fileName.isEmpty() ? Optional.of(supplier.get()) : Optional.<String>empty();
+
+		_lock.writeLock().lock();
+		try {
+			var fileName = _fileName.or(() -> suppliedFileName).orElseGet(supplier);
+			var path = Path.of(fileName);
+			var modificationCount = _modificationCount;
+			boolean isNewFile = _fileName.isEmpty();
 
-		// Open the file to save, and create an output stream from it
-		try (var file = new FileOutputStream(fileName); var stream = new ObjectOutputStream(file)) {
-			// Write the warehouse to file
-			stream.writeObject(_warehouse);
-			_warehouseIsDirty = false;
+			// If we can, only append the changes since the last save to the associated file, else encode
+			// a new snapshot
+			// Note: Once the journal is larger than the snapshot, we write a new snapshot instead,
+			//       so that loading doesn't get slower over time.
+			// Note: Both are copies, so they can be written while the warehouse is changed.
+			boolean append = _fileName.isPresent() && _snapshotSize.isPresent() && !_lastSaveFailed
+					&& _journalSize + _journal.getPendingSize() <= _snapshotSize.getAsLong();
+			ByteBuffer contents;
+			Optional<WarehouseIndex> index;
+			if (append) {
+				contents = _journal.getPending();
+				index = Optional.empty();
+				_journalSize += contents.limit();
+			} else {
+				try {
+					var snapshot = encodeSnapshot();
+					contents = snapshot.getLhs();
+					index = Optional.of(snapshot.getRhs());
+				} catch (IOException e) {
+					_failedSaveFileName = Optional.of(fileName);
+					return CompletableFuture.failedFuture(new CompletionException(e));
+				}
+				_snapshotSize = OptionalLong.of(contents.limit());
+				_journalSize = 0;
+			}
+
+			// Note: Whatever we write includes all changes, so we can discard the journal
+			_journal.clear();
 			_fileName = Optional.of(fileName);
+
+			// Then write it after all previous saves
+			_lastSave = _lastSave.handle((_result, _error) -> null).thenRunAsync(() -> {
+				try {
+					if (append) {
+						// Note: If a previous save failed after we started, we can't append to what it left
+						if (_lastSaveFailed) {
+							throw new IOException("Unable to append to incomplete file " + fileName);
+						}
+						writeFile(path, contents, StandardOpenOption.APPEND);
+					} else {
+						// Note: Compressed here, so the warehouse may keep being changed meanwhile
+						var compressed = BlockCompression.compress(contents);
+						replaceFile(path, compressed.duplicate());
+						writeIndex(path, index.get(), compressed);
+					}
+
+					_lastSaveFailed = false;
+					_failedSaveFileName = Optional.empty();
+					_savedModificationCount = modificationCount;
+				} catch (IOException e) {
+					// Note: If we couldn't save to a new file, it's no longer associated
+					_lastSaveFailed = true;
+					_failedSaveFileName = Optional.of(fileName);
+					if (isNewFile) {
+						_fileName = Optional.empty();
+					}
+					throw new CompletionException(e);
+				}
+			}, SAVE_EXECUTOR);
+
+			return _lastSave;
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/** Waits for all saves in the background to finish, successfully or not */
+	public void awaitPendingSaves() {
+		_lastSave.handle((_result, _error) -> null).join();
+	}
+
+	/**
+	 * Retrieves the file the last save failed to write to, if it failed, so it's only retrieved once
+	 * 
+	 * @return The file the last save failed to write to, if it failed
+	 */
+	// Note: Saves written in the background have no one to report to when they fail, so it's
+	//       up to the application to check for it later.
+	public Optional<String> clearFailedSave() {
+		var fileName = _failedSaveFileName;
+		_failedSaveFileName = Optional.empty();
+		return fileName;
+	}
+
+	/**
+	 * Reads from the warehouse while holding the lock, and the locks of all products, as a reader
+	 * 
+	 * @param <T>
+	 *            The type of the value read
+	 * @param reader
+	 *            The reader
+	 * @return The value read
+	 */
+	private <T> T read(Supplier<T> reader) {
+		_lock.readLock().lock();
+		int lockedCount = 0;
+		try {
+			for (; lockedCount < _productLocks.length; lockedCount++) {
+				_productLocks[lockedCount].readLock().lock();
+			}
+			return reader.get();
+		} finally {
+			while (lockedCount > 0) {
+				_productLocks[--lockedCount].readLock().unlock();
+			}
+			_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Locks the warehouse as a reader, and then the locks of some products as a writer, to change their stock
+	 * 
+	 * @param products
+	 *            The products to change the stock of
+	 * @return The indexes of all product locks held, to release with `unlockProducts`
+	 */
+	private int[] lockProducts(Collection<Product> products) {
+		var lockIdxs = products.stream() //
+				.mapToInt(product -> Math.floorMod(product.hashCode(), _productLocks.length)) //
+				.sorted() //
+				.distinct() //
+				.toArray();
+
+		_lock.readLock().lock();
+		for (var lockIdx : lockIdxs) {
+			_productLocks[lockIdx].writeLock().lock();
+		}
+
+		return lockIdxs;
+	}
+
+	/**
+	 * Unlocks the locks of products locked by `lockProducts`, and then the warehouse
+	 * 
+	 * @param lockIdxs
+	 *            The indexes of all product locks held
+	 */
+	private void unlockProducts(int[] lockIdxs) {
+		for (int lockIdx = lockIdxs.length - 1; lockIdx >= 0; lockIdx--) {
+			_productLocks[lockIdxs[lockIdx]].writeLock().unlock();
+		}
+		_lock.readLock().unlock();
+	}
+
+	/**
+	 * Reads a stream from the warehouse while holding the lock as a reader, collecting it before releasing it
+	 * 
+	 * @param <T>
+	 *            The type of the values
+	 * @param reader
+	 *            The reader of the stream
+	 * @return A stream over all values read
+	 */
+	private <T> Stream<T> readStream(Supplier<Stream<T>> reader) {
+		return read(() -> reader.get().collect(Collectors.toList())).stream();
+	}
+
+	/**
+	 * Opens the current version of the warehouse, which may be read while the warehouse keeps being changed
+	 * 
+	 * @return The version
+	 */
+	// Note: The warehouse is encoded onto a snapshot while holding the lock, and decoded onto the version after
+	//       releasing it, so changes only wait for it to be encoded. If the warehouse wasn't changed since the last
+	//       version was opened, and a reader still holds it, it's shared instead.
+	// Note: Encoding takes time proportional to the whole warehouse, history included, which is decoded back onto
+	//       memory, and changes wait for all of it. So listings, even of all partners, are read straight from the
+	//       warehouse instead, until versions can be opened without copying it.
+	public WarehouseVersion openVersion() {
+		var lastVersion = read(() -> _lastVersion //
+				.filter(version -> version.getLhs() == _modificationCount) //
+				.map(version -> version.getRhs().get()));
+		if (lastVersion.isPresent()) {
+			return new WarehouseVersion(lastVersion.get());
+		}
+
+		var encoded = read(() -> {
+			try {
+				return new Pair<>(new Pair<>(_modificationCount, _warehouse.getUnpaidSalesTotal()), encodeSnapshot());
+			} catch (IOException e) {
+				// Note: We only ever write to memory, so this can't happen
+				throw new UncheckedIOException(e);
+			}
+		});
+		var modificationCount = encoded.getLhs().getLhs();
+		var snapshot = encoded.getRhs();
+		Warehouse warehouse;
+		try {
+			warehouse = WarehouseSnapshot.read(new SnapshotInput(snapshot.getLhs()), Optional.of(snapshot.getRhs()));
+		} catch (IOException e) {
+			// Note: We only ever read what we just wrote, so this can't happen
+			throw new UncheckedIOException(e);
+		}
+		warehouse.restoreUnpaidSalesTotal(encoded.getLhs().getRhs());
+
+		var manager = new WarehouseManager(warehouse);
+		_lastVersion = Optional.of(new Pair<>(modificationCount, new WeakReference<>(manager)));
+		return new WarehouseVersion(manager);
+	}
+
+	/**
+	 * Encodes a snapshot of the warehouse
+	 * 
+	 * @return The snapshot, along with it's index
+	 * @throws IOException
+	 *             If unable to encode
+	 */
+	private Pair<ByteBuffer, WarehouseIndex> encodeSnapshot() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		WarehouseIndex index;
+		try (var output = new SnapshotOutput(Channels.newChannel(bytes))) {
+			index = WarehouseSnapshot.write(_warehouse, output);
+		}
+
+		return new Pair<>(ByteBuffer.wrap(bytes.toByteArray()), index);
+	}
+
+	/**
+	 * Writes the index of a snapshot alongside the snapshot's file
+	 * 
+	 * @param path
+	 *            The path of the snapshot's file
+	 * @param index
+	 *            The index
+	 * @param snapshot
+	 *            The snapshot, as it's stored
+	 */
+	// Note: The index only makes loading faster, and is checked against the snapshot when loading,
+	//       so we don't fail the save if unable to write it.
+	private static void writeIndex(Path path, WarehouseIndex index, ByteBuffer snapshot) {
+		try {
+			replaceFile(WarehouseIndex.pathOf(path), index.encode(snapshot));
+		} catch (IOException e) {
+			// Note: Any index left over is of an older snapshot, so it'll be ignored when loading
+		}
+	}
+
+	/**
+	 * Reads the index of a snapshot from alongside the snapshot's file
+	 * 
+	 * @param path
+	 *            The path of the snapshot's file
+	 * @param snapshot
+	 *            The snapshot's file, as it's stored
+	 * @return The index, if it exists and is of the snapshot
+	 */
+	// Note: Any index we can't use is ignored, as the snapshot can always be read without it
+	private static Optional<WarehouseIndex> readIndex(Path path, ByteBuffer snapshot) {
+		try {
+			var index = ByteBuffer.wrap(Files.readAllBytes(WarehouseIndex.pathOf(path)));
+			return Optional.of(WarehouseIndex.decode(index, snapshot));
+		} catch (IOException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Writes contents to a file
+	 * 
+	 * @param path
+	 *            The path of the file
+	 * @param contents
+	 *            The contents to write
+	 * @param options
+	 *            The options to open the file with, besides writing
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private static void writeFile(Path path, ByteBuffer contents, StandardOpenOption... options) throws IOException {
+		// Note: Duplicated so we don't change the position of `contents`
+		var buffer = contents.duplicate();
+		try (var channel = FileChannel.open(path, EnumSet.of(StandardOpenOption.WRITE, options))) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Replaces a file with new contents
+	 * 
+	 * @param path
+	 *            The path of the file
+	 * @param contents
+	 *            The contents to write
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	// Note: The contents are written to a new file which then replaces the file, instead of overwriting
+	//       it, as the history of the snapshot we loaded from it may still be read from it.
+	private static void replaceFile(Path path, ByteBuffer contents) throws IOException {
+		var newPath = path.resolveSibling(path.getFileName() + ".new");
+		try {
+			writeFile(newPath, contents, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			Files.move(newPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(newPath);
+			throw e;
 		}
 	}
 
@@ -65,11 +491,75 @@ public class WarehouseManager {
 	 *             If a class wasn't found during loading
 	 */
 	public void loadFrom(String fileName) throws IOException, ClassNotFoundException {
-		try (var file = new FileInputStream(fileName); var stream = new ObjectInputStream(file)) {
+		_lock.writeLock().lock();
+		try {
+			// Note: We might be loading the file we're saving to
+			awaitPendingSaves();
+			loadFromLocked(fileName);
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Loads from the file name and then associates it, while holding the lock as a writer
+	 * 
+	 * @param fileName
+	 *            The filename to load from
+	 * @throws IOException
+	 *             If unable to load
+	 * @throws ClassNotFoundException
+	 *             If a class wasn't found during loading
+	 */
+	private void loadFromLocked(String fileName) throws IOException, ClassNotFoundException {
+		try (var channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File too large to load: " + fileName);
+			}
+			// Note: The mapping stays valid after closing the channel, so the warehouse reads it's
+			//       history from it once accessed, see `replaceFile`.
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
 			// Try to read the warehouse
+			// Note: Files saved before snapshots were introduced are still loaded through serialization
+			Warehouse warehouse;
+			OptionalLong snapshotSize;
+			long journalSize;
+			if (buffer.remaining() >= Short.BYTES && buffer.getShort(0) == ObjectStreamConstants.STREAM_MAGIC) {
+				try (var stream = new ObjectInputStream(Channels.newInputStream(channel))) {
+					warehouse = (Warehouse) stream.readObject();
+				}
+				snapshotSize = OptionalLong.empty();
+				journalSize = 0;
+			} else {
+				// Note: Snapshots saved before compression was introduced are still read straight from the file,
+				//       and compressed ones are decompressed a block at a time, once each block is first read
+				var index = readIndex(Path.of(fileName), buffer);
+				if (BlockCompression.isCompressed(buffer)) {
+					var input = new SnapshotInput(BlockCompression.decompressLazily(buffer));
+					warehouse = WarehouseSnapshot.read(input, index);
+					snapshotSize = OptionalLong.of(input.position());
+				} else {
+					var input = new SnapshotInput(buffer);
+					warehouse = WarehouseSnapshot.read(input, index);
+					snapshotSize = OptionalLong.of(input.position());
+					buffer.position(buffer.position() + (int) input.position());
+				}
+
+				// Note: Any changes saved after the snapshot are replayed on top of it
+				journalSize = buffer.remaining();
+				WarehouseJournal.replay(new SnapshotInput(buffer), warehouse);
+			}
+
+			// Note: Loading counts as a change, so that versions opened before aren't shared after it
+			_modificationCount++;
+
 			// Note: We set dirty to false, as the new file is now the current state of the warehouse
-			_warehouse = (Warehouse) stream.readObject();
-			_warehouseIsDirty = false;
+			_warehouse = warehouse;
+			_journal = new WarehouseJournal();
+			_snapshotSize = snapshotSize;
+			_journalSize = journalSize;
+			_savedModificationCount = _modificationCount;
 			_fileName = Optional.of(fileName);
 		}
 	}
@@ -83,12 +573,20 @@ public class WarehouseManager {
 	 *             If unable to import the file
 	 */
 	public void importFile(String fileName) throws ImportFileException {
-		// Import and set ourselves as dirty
+		_lock.writeLock().lock();
 		try {
-			_warehouse.importFile(fileName);
-			_warehouseIsDirty = true;
-		} catch (IOException | BadEntryException | ParsingException e) {
-			throw new ImportFileException(fileName, e);
+			// Import and set ourselves as dirty
+			try {
+				_warehouse.importFile(fileName);
+				_modificationCount++;
+
+				// Note: Imports aren't journaled, so the next save must write a new snapshot
+				_snapshotSize = OptionalLong.empty();
+			} catch (IOException | BadEntryException | ParsingException e) {
+				throw new ImportFileException(fileName, e);
+			}
+		} finally {
+			_lock.writeLock().unlock();
 		}
 	}
 
@@ -98,7 +596,7 @@ public class WarehouseManager {
 	 * @return If the warehouse is dirty since the last save
 	 */
 	public boolean isWarehouseDirty() {
-		return _warehouseIsDirty;
+		return read(() -> _modificationCount != _savedModificationCount);
 	}
 
 	/**
@@ -107,7 +605,7 @@ public class WarehouseManager {
 	 * @return The current date
 	 */
 	public int getDate() {
-		return _warehouse.getDate();
+		return read(() -> _warehouse.getDate());
 	}
 
 	/**
@@ -117,8 +615,14 @@ public class WarehouseManager {
 	 *            The offset to add to the date
 	 */
 	public void advanceDate(int offset) {
-		_warehouse.advanceDate(offset);
-		_warehouseIsDirty = true;
+		_lock.writeLock().lock();
+		try {
+			_warehouse.advanceDate(offset);
+			_journal.recordAdvanceDate(offset);
+			_modificationCount++;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -127,7 +631,7 @@ public class WarehouseManager {
 	 * @return The available balance
 	 */
 	public double getAvailableBalance() {
-		return _warehouse.getAvailableBalance();
+		return read(() -> _warehouse.getAvailableBalance());
 	}
 
 	/**
@@ -136,16 +640,51 @@ public class WarehouseManager {
 	 * @return The accounting balance
 	 */
 	public double getAccountingBalance() {
-		return _warehouse.getAccountingBalance();
+		return read(() -> _warehouse.getAccountingBalance());
+	}
+
+	/**
+	 * Retrieves both the available and accounting balances, at once
+	 * 
+	 * @return The available balance, and the accounting balance
+	 */
+	// Note: Both are read while holding the lock once, so they're of the same warehouse. The accounting
+	//       balance is kept up to date by the ledger of unpaid sales, so this doesn't depend on it's size.
+	public Pair<Double, Double> getBalances() {
+		return read(() -> new Pair<>(_warehouse.getAvailableBalance(), _warehouse.getAccountingBalance()));
 	}
 
 	/**
-	 * Retrieves a stream over all products
+	 * Retrieves a stream over all products, in collation order of their ids
 	 * 
 	 * @return All products
 	 */
 	public Stream<Product> getProducts() {
-		return _warehouse.getProducts();
+		return readStream(() -> _warehouse.getProducts());
+	}
+
+	/**
+	 * Retrieves a stream over all products with ids in a range, in collation order of their ids
+	 * 
+	 * @param fromId
+	 *            The (inclusive) lower bound of the ids
+	 * @param toId
+	 *            The (exclusive) upper bound of the ids
+	 * @return All products in the range, or none if the bounds are reversed
+	 */
+	public Stream<Product> getProducts(String fromId, String toId) {
+		return readStream(() -> _warehouse.getProducts(fromId, toId));
+	}
+
+	/**
+	 * Retrieves a stream over all products whose ids start with `prefix`, in collation order of their ids
+	 * 
+	 * @param prefix
+	 *            The prefix of the ids
+	 * @return All products with the prefix
+	 */
+	public Stream<Product> getProductsWithPrefix(String prefix) {
+		return readStream(() -> _warehouse.getProductsWithPrefix(prefix));
 	}
 
 	/**
@@ -156,7 +695,7 @@ public class WarehouseManager {
 	 * @return The product, if it exists
 	 */
 	public Optional<Product> getProduct(String productId) {
-		return _warehouse.getProduct(productId);
+		return read(() -> _warehouse.getProduct(productId));
 	}
 
 	/**
@@ -169,9 +708,15 @@ public class WarehouseManager {
 	 *             If the product already exists
 	 */
 	public Product registerProduct(String productId) throws ProductAlreadyExistsException {
-		var product = _warehouse.registerProduct(productId);
-		_warehouseIsDirty = true;
-		return product;
+		_lock.writeLock().lock();
+		try {
+			var product = _warehouse.registerProduct(productId);
+			_journal.recordRegisterProduct(product);
+			_modificationCount++;
+			return product;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -193,9 +738,15 @@ public class WarehouseManager {
 	public Product registerDerivedProduct(String productId, double costFactor,
 			Stream<Pair<String, Integer>> recipeProductIdQuantities)
 			throws ProductAlreadyExistsException, UnknownProductIdException {
-		var product = _warehouse.registerDerivedProduct(productId, costFactor, recipeProductIdQuantities);
-		_warehouseIsDirty = true;
-		return product;
+		_lock.writeLock().lock();
+		try {
+			var product = _warehouse.registerDerivedProduct(productId, costFactor, recipeProductIdQuantities);
+			_journal.recordRegisterProduct(product);
+			_modificationCount++;
+			return product;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -204,7 +755,7 @@ public class WarehouseManager {
 	 * @return All batches
 	 */
 	public Stream<Batch> getBatches() {
-		return _warehouse.getBatches();
+		return readStream(() -> _warehouse.getBatches());
 	}
 
 	/**
@@ -215,16 +766,62 @@ public class WarehouseManager {
 	 * @return All batches
 	 */
 	public Stream<Batch> getBatchesForProduct(Product product) {
-		return _warehouse.getBatchesForProduct(product);
+		return readStream(() -> _warehouse.getBatchesForProduct(product));
+	}
+
+	/**
+	 * Retrieves a stream over all batches supplied by a partner
+	 * 
+	 * @param partner
+	 *            The partner
+	 * @return All batches
+	 */
+	public Stream<Batch> getBatchesForPartner(Partner partner) {
+		return readStream(() -> _warehouse.getBatchesForPartner(partner));
+	}
+
+	/**
+	 * Retrieves a stream over all batches with a unit price under `price`, ordered by unit price
+	 * 
+	 * @param price
+	 *            The (exclusive) upper bound of the unit price
+	 * @return All batches under the price
+	 */
+	public Stream<Batch> getBatchesUnderPrice(double price) {
+		return readStream(() -> _warehouse.getBatchesUnderPrice(price));
 	}
 
 	/**
-	 * Retrieves a stream over all partners
+	 * Retrieves a stream over all partners, in collation order of their ids
 	 * 
 	 * @return All partners
 	 */
 	public Stream<Partner> getPartners() {
-		return _warehouse.getPartners();
+		return readStream(() -> _warehouse.getPartners());
+	}
+
+	/**
+	 * Retrieves a stream over all partners with ids in a range, in collation order of their ids
+	 * 
+	 * @param fromId
+	 *            The (inclusive) lower bound of the ids
+	 * @param toId
+	 *            The (exclusive) upper bound of the ids
+	 * @return All partners in the range, or none if the bounds are reversed
+	 */
+	public Stream<Partner> getPartners(String fromId, String toId) {
+		return readStream(() -> _warehouse.getPartners(fromId, toId));
+	}
+
+	/**
+	 * Retrieves a stream over all partners whose ids start with `prefix`, in collation order of their ids
+	 * 
+	 * @param prefix
+	 *            The prefix of the ids
+	 * @return All partners with the prefix
+	 */
+	public Stream<Partner> getPartnersWithPrefix(String prefix) {
+		return readStream(() -> _warehouse.getPartnersWithPrefix(prefix));
 	}
 
 	/**
@@ -235,7 +832,7 @@ public class WarehouseManager {
 	 * @return The partner, if they exist
 	 */
 	public Optional<Partner> getPartner(String partnerId) {
-		return _warehouse.getPartner(partnerId);
+		return read(() -> _warehouse.getPartner(partnerId));
 	}
 
 	/**
@@ -246,7 +843,7 @@ public class WarehouseManager {
 	 * @return All purchases of the partner
 	 */
 	public Stream<Purchase> getPartnerPurchases(Partner partner) {
-		return _warehouse.getPartnerPurchases(partner);
+		return readStream(() -> _warehouse.getPartnerPurchases(partner));
 	}
 
 	/**
@@ -257,7 +854,7 @@ public class WarehouseManager {
 	 * @return All sales of the partner
 	 */
 	public Stream<Sale> getPartnerSales(Partner partner) {
-		return _warehouse.getPartnerSales(partner);
+		return readStream(() -> _warehouse.getPartnerSales(partner));
 	}
 
 	/**
@@ -268,7 +865,7 @@ public class WarehouseManager {
 	 * @return All breakdown transactions of the partner
 	 */
 	public Stream<BreakdownTransaction> getPartnerBreakdownTransactions(Partner partner) {
-		return _warehouse.getPartnerBreakdownTransactions(partner);
+		return readStream(() -> _warehouse.getPartnerBreakdownTransactions(partner));
 	}
 
 	/**
@@ -285,9 +882,15 @@ public class WarehouseManager {
 	 *             If the partner already exists
 	 */
 	public Partner registerPartner(String id, String name, String address) throws PartnerAlreadyExistsException {
-		var partner = _warehouse.registerPartner(id, name, address);
-		_warehouseIsDirty = true;
-		return partner;
+		_lock.writeLock().lock();
+		try {
+			var partner = _warehouse.registerPartner(id, name, address);
+			_journal.recordRegisterPartner(partner);
+			_modificationCount++;
+			return partner;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -299,8 +902,14 @@ public class WarehouseManager {
 	 *            The product to toggle notifications for
 	 */
 	public void togglePartnerNotifications(Partner partner, Product product) {
-		_warehouse.togglePartnerNotifications(partner, product);
-		_warehouseIsDirty = true;
+		_lock.writeLock().lock();
+		try {
+			_warehouse.togglePartnerNotifications(partner, product);
+			_journal.recordTogglePartnerNotifications(partner, product);
+			_modificationCount++;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -309,7 +918,11 @@ public class WarehouseManager {
 	 * @return All transactions
 	 */
 	public Stream<Transaction> getTransactions() {
-		return _warehouse.getTransactions();
+		// Note: Transactions are never removed, and are published without locking, so, instead of collecting them
+		//       all, each one is only retrieved once it's consumed, so that they're still decoded lazily.
+		var warehouse = _warehouse;
+		return IntStream.range(0, warehouse.getNextTransactionId())
+				.mapToObj(id -> warehouse.getTransaction(id).get());
 	}
 
 	/**
@@ -319,6 +932,7 @@ public class WarehouseManager {
 	 *            The id of the transaction
 	 * @return The transaction, if valid
 	 */
+	// Note: Transactions are published without locking, see `TransactionStore`
 	public Optional<Transaction> getTransaction(int id) {
 		return _warehouse.getTransaction(id);
 	}
@@ -337,9 +951,21 @@ public class WarehouseManager {
 	 * @return The purchase
 	 */
 	public Purchase registerPurchase(Partner partner, Product product, int quantity, double unitPrice) {
-		var purchase = _warehouse.registerPurchase(partner, product, quantity, unitPrice);
-		_warehouseIsDirty = true;
-		return purchase;
+		var productLocks = lockProducts(List.of(product));
+		try {
+			// Note: Adding a batch also indexes it, which is shared by all products, so it's all committed at once
+			_commitLock.lock();
+			try {
+				var purchase = _warehouse.registerPurchase(partner, product, quantity, unitPrice);
+				_journal.recordRegisterPurchase(partner, product, quantity, unitPrice);
+				_modificationCount++;
+				return purchase;
+			} finally {
+				_commitLock.unlock();
+			}
+		} finally {
+			unlockProducts(productLocks);
+		}
 	}
 
 	/**
@@ -358,8 +984,25 @@ public class WarehouseManager {
 	 */
 	public void registerSale(Partner partner, Product product, int quantity, int deadline)
 			throws InsufficientProductsException {
-		_warehouse.registerSale(partner, product, quantity, deadline);
-		_warehouseIsDirty = true;
+		// Note: Derived products may be manufactured from any product in their bill of materials
+		var products = product.getAsDerived() //
+				.map(derivedProduct -> derivedProduct.getBillOfMaterials().getProducts()) //
+				.orElseGet(() -> List.of(product));
+		var productLocks = lockProducts(products);
+		try {
+			var taken = _warehouse.takeProduct(product, quantity);
+
+			_commitLock.lock();
+			try {
+				_warehouse.commitSale(partner, product, quantity, deadline, taken);
+				_journal.recordRegisterSale(partner, product, quantity, deadline);
+				_modificationCount++;
+			} finally {
+				_commitLock.unlock();
+			}
+		} finally {
+			unlockProducts(productLocks);
+		}
 	}
 
 	/**
@@ -369,8 +1012,14 @@ public class WarehouseManager {
 	 *            The transaction to pay
 	 */
 	public void paySale(Transaction transaction) {
-		_warehouse.paySale(transaction);
-		_warehouseIsDirty = true;
+		_lock.writeLock().lock();
+		try {
+			_warehouse.paySale(transaction);
+			_journal.recordPaySale(transaction);
+			_modificationCount++;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -386,15 +1035,21 @@ public class WarehouseManager {
 	 *             If there aren't enough products to break down
 	 */
 	public void registerBreakdown(Partner partner, Product product, int quantity) throws InsufficientProductsException {
-		// If ` product` isn't derived, return
-		var productAsDerived = product.getAsDerived();
-		if (productAsDerived.isEmpty()) {
-			return;
-		}
+		_lock.writeLock().lock();
+		try {
+			// If ` product` isn't derived, return
+			var productAsDerived = product.getAsDerived();
+			if (productAsDerived.isEmpty()) {
+				return;
+			}
 
-		// Else register it
-		_warehouse.registerBreakdown(partner, productAsDerived.get(), quantity);
-		_warehouseIsDirty = true;
+			// Else register it
+			_warehouse.registerBreakdown(partner, productAsDerived.get(), quantity);
+			_journal.recordRegisterBreakdown(partner, product, quantity);
+			_modificationCount++;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -405,7 +1060,7 @@ public class WarehouseManager {
 	 * @return The quantity of the product
 	 */
 	public int productTotalQuantity(Product product) {
-		return _warehouse.productTotalQuantity(product);
+		return read(() -> _warehouse.productTotalQuantity(product));
 	}
 
 	/**
@@ -494,9 +1149,18 @@ public class WarehouseManager {
 	 * @return All pending notifications
 	 */
 	public List<Notification> clearPendingPartnerNotifications(Partner partner) {
-		var notifications = partner.clearPendingNotifications();
-		_warehouseIsDirty |= !notifications.isEmpty();
-		return notifications;
+		_lock.writeLock().lock();
+		try {
+			// Note: Clearing nothing isn't a change, so it isn't journaled, as it's done every time a partner is shown
+			var notifications = _warehouse.clearPendingPartnerNotifications(partner);
+			if (!notifications.isEmpty()) {
+				_journal.recordClearPendingPartnerNotifications(partner);
+				_modificationCount++;
+			}
+			return notifications;
+		} finally {
+			_lock.writeLock().unlock();
+		}
 	}
 
 	/**
@@ -509,6 +1173,6 @@ public class WarehouseManager {
 	 * @return The value formatted
 	 */
 	public <T extends WarehouseFormattable> String format(T value) {
-		return value.format(this);
+		return read(() -> value.format(this));
 	}
 }
@@ -0,0 +1,887 @@
+package ggc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import ggc.core.notification.BargainNotification;
+import ggc.core.notification.NewNotification;
+import ggc.core.partnerstatus.ElitePartnerStatus;
+import ggc.core.partnerstatus.NormalPartnerStatus;
+import ggc.core.partnerstatus.SelectionPartnerStatus;
+import ggc.core.util.Pair;
+import ggc.core.util.SnapshotInput;
+import ggc.core.util.SnapshotOutput;
+import static ggc.core.util.StreamIterator.streamIt;
+
+/**
+ * Binary snapshot of a warehouse.
+ * 
+ * A snapshot is a header record, followed by the sections of products, partners, batches, transactions and
+ * notifications, in that order. Each section starts with a record holding it's tag and the number of records in it,
+ * with one record per value. Products and partners are referred to by their index in their section, with each product
+ * coming after all of the products in it's recipe.
+ * <p>
+ * Transactions, the history, are preceded by an index record with the position of each one and the transactions of
+ * each partner, so that only unpaid sales are read when loading, and all others only once they're accessed. Snapshots
+ * of version 1 don't have the index, and are read whole.
+ * </p>
+ */
+// Note: Package private because we don't need it outside of core
+class WarehouseSnapshot {
+	/** Magic number at the start of every snapshot */
+	static final int MAGIC = 0x4747_4357;
+
+	/** Version of the snapshot format */
+	static final int VERSION = 2;
+
+	/** Version of snapshots without an index of their transactions */
+	private static final int VERSION_WITHOUT_HISTORY_INDEX = 1;
+
+	/** Section tags */
+	private static final int SECTION_PRODUCTS = 1;
+	private static final int SECTION_PARTNERS = 2;
+	private static final int SECTION_BATCHES = 3;
+	private static final int SECTION_TRANSACTIONS = 4;
+	private static final int SECTION_NOTIFICATIONS = 5;
+
+	/** Transaction types */
+	private static final int TRANSACTION_PURCHASE = 0;
+	private static final int TRANSACTION_SALE = 1;
+	private static final int TRANSACTION_BREAKDOWN = 2;
+
+	/** Partner statuses */
+	private static final int STATUS_NORMAL = 0;
+	private static final int STATUS_SELECTION = 1;
+	private static final int STATUS_ELITE = 2;
+
+	/** Notification types */
+	private static final int NOTIFICATION_NEW = 0;
+	private static final int NOTIFICATION_BARGAIN = 1;
+
+	/** Owner of the notifications still in the notification log */
+	private static final int NOTIFICATION_OWNER_LOG = -1;
+
+	/** Index of each product */
+	private Map<Product, Integer> _productIdxs = new HashMap<>();
+
+	/** Index of each partner */
+	private Map<Partner, Integer> _partnerIdxs = new HashMap<>();
+
+	/** All products, by index */
+	private List<Product> _products = new ArrayList<>();
+
+	/** All partners, by index */
+	private List<Partner> _partners = new ArrayList<>();
+
+	/** Version of the snapshot being read */
+	private int _version;
+
+	/** All transactions, when reading */
+	private TransactionStore _transactions = new TransactionStore();
+
+	/** All transaction records, when reading */
+	// Note: Kept after reading, to decode transactions from once they're accessed
+	private SnapshotInput _history;
+
+	/** Position of each transaction record in `_history`, by id */
+	private IntBuffer _historyPositions;
+
+	// Note: Only created through `write` and `read`
+	private WarehouseSnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of a warehouse
+	 * 
+	 * @param warehouse
+	 *            The warehouse to write
+	 * @param out
+	 *            The output to write to
+	 * @return The index of the snapshot
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	static WarehouseIndex write(Warehouse warehouse, SnapshotOutput out) throws IOException {
+		var snapshot = new WarehouseSnapshot();
+		snapshot.writeWarehouse(warehouse, out);
+		return new WarehouseIndex(
+				snapshot._products.stream().map(Product::getCollationKey).collect(Collectors.toList()),
+				snapshot._partners.stream().map(Partner::getCollationKey).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Reads a snapshot of a warehouse
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param index
+	 *            The index of the snapshot, if any
+	 * @return The warehouse
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	static Warehouse read(SnapshotInput in, Optional<WarehouseIndex> index) throws IOException {
+		return new WarehouseSnapshot().readWarehouse(in, index);
+	}
+
+	/**
+	 * Writes a warehouse
+	 * 
+	 * @param warehouse
+	 *            The warehouse to write
+	 * @param out
+	 *            The output to write to
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private void writeWarehouse(Warehouse warehouse, SnapshotOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(warehouse.getDate());
+		// Note: The available balance is always an integer, it's only retrieved as a double
+		out.writeInt((int) warehouse.getAvailableBalance());
+		out.writeInt(warehouse.getNextTransactionId());
+		out.endRecord();
+
+		// Note: Products are ordered so each product comes after all of it's components
+		for (var product : streamIt(warehouse.getProducts())) {
+			addProduct(product);
+		}
+		writeSection(out, SECTION_PRODUCTS, _products.size());
+		for (var product : _products) {
+			writeProduct(out, product);
+		}
+
+		_partners = warehouse.getPartners().collect(Collectors.toList());
+		writeSection(out, SECTION_PARTNERS, _partners.size());
+		for (var partner : _partners) {
+			_partnerIdxs.put(partner, _partnerIdxs.size());
+			writePartner(out, partner);
+		}
+
+		var batches = warehouse.getBatches().collect(Collectors.toList());
+		writeSection(out, SECTION_BATCHES, batches.size());
+		for (var batch : batches) {
+			writeBatch(out, batch);
+			out.endRecord();
+		}
+
+		writeHistory(warehouse, out);
+
+		// Note: We write the notifications still in the log, followed by each partner's pending notifications
+		var notificationLog = warehouse.getNotificationLog();
+		var notifications = new ArrayList<Pair<Integer, Notification>>();
+		for (var notification : notificationLog.getUnreadNotifications()) {
+			notifications.add(new Pair<>(NOTIFICATION_OWNER_LOG, notification));
+		}
+		for (var partner : _partners) {
+			for (var notification : streamIt(partner.getPendingNotifications())) {
+				notifications.add(new Pair<>(_partnerIdxs.get(partner), notification));
+			}
+		}
+		writeSection(out, SECTION_NOTIFICATIONS, notifications.size());
+		out.writeLong(notificationLog.getFirstSequence());
+		out.endRecord();
+		for (var pair : notifications) {
+			writeNotification(out, pair.getLhs(), pair.getRhs());
+		}
+	}
+
+	/**
+	 * Writes all transactions, preceded by their index
+	 * 
+	 * @param warehouse
+	 *            The warehouse to write the transactions of
+	 * @param out
+	 *            The output to write to
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private void writeHistory(Warehouse warehouse, SnapshotOutput out) throws IOException {
+		// Note: The transactions are encoded first, as the index needs their positions
+		var recordsBytes = new ByteArrayOutputStream();
+		var positions = IntStream.builder();
+		int transactionsCount = 0;
+		try (var records = new SnapshotOutput(Channels.newChannel(recordsBytes))) {
+			for (var transaction : streamIt(warehouse.getTransactions())) {
+				positions.add((int) records.size());
+				writeTransaction(records, transaction, _productIdxs, _partnerIdxs);
+				transactionsCount++;
+			}
+		}
+		var history = ByteBuffer.wrap(recordsBytes.toByteArray());
+
+		writeSection(out, SECTION_TRANSACTIONS, transactionsCount);
+		out.writeInt(history.limit());
+		writeIds(out, warehouse.getUnpaidSales().mapToInt(Sale::getId).sorted());
+		for (var partner : _partners) {
+			writeIds(out, partner.getPurchaseIds());
+			writeIds(out, partner.getSaleIds());
+			writeIds(out, partner.getBreakdownTransactionIds());
+		}
+		for (var position : positions.build().toArray()) {
+			out.writeInt(position);
+		}
+		out.endRecord();
+		out.writeRecords(history);
+	}
+
+	/**
+	 * Writes transaction ids onto the current record
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param ids
+	 *            The ids
+	 */
+	private static void writeIds(SnapshotOutput out, IntStream ids) {
+		var idsArray = ids.toArray();
+		out.writeInt(idsArray.length);
+		for (var id : idsArray) {
+			out.writeInt(id);
+		}
+	}
+
+	/**
+	 * Adds a product after all of it's components, if not already added
+	 * 
+	 * @param product
+	 *            The product to add
+	 */
+	private void addProduct(Product product) {
+		if (_productIdxs.containsKey(product)) {
+			return;
+		}
+
+		var derivedProduct = product.getAsDerived();
+		if (derivedProduct.isPresent()) {
+			for (var component : derivedProduct.get().getRecipe().getProducts()) {
+				addProduct(component);
+			}
+		}
+
+		_productIdxs.put(product, _products.size());
+		_products.add(product);
+	}
+
+	/**
+	 * Writes the record starting a section
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param tag
+	 *            The tag of the section
+	 * @param count
+	 *            The number of values in the section
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private static void writeSection(SnapshotOutput out, int tag, int count) throws IOException {
+		out.writeByte(tag);
+		out.writeInt(count);
+		out.endRecord();
+	}
+
+	/**
+	 * Writes a product
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param product
+	 *            The product to write
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private void writeProduct(SnapshotOutput out, Product product) throws IOException {
+		out.writeString(product.getId());
+
+		var derivedProduct = product.getAsDerived();
+		out.writeBoolean(derivedProduct.isPresent());
+		if (derivedProduct.isPresent()) {
+			var recipe = derivedProduct.get().getRecipe();
+			out.writeDouble(derivedProduct.get().getCostFactor());
+			out.writeInt(recipe.getProducts().size());
+			for (var component : recipe.getProducts()) {
+				out.writeInt(_productIdxs.get(component));
+				out.writeInt(recipe.getProductQuantity(component));
+			}
+		}
+
+		// Note: The quantity isn't written, as it's the sum of the product's batches
+		out.writeBoolean(product.getMinPrice().isPresent());
+		out.writeDouble(product.getMinPrice().orElse(0.0));
+		out.writeBoolean(product.getMaxPrice().isPresent());
+		out.writeDouble(product.getMaxPrice().orElse(0.0));
+		out.endRecord();
+	}
+
+	/**
+	 * Writes a partner, without any of their transactions or notifications
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param partner
+	 *            The partner to write
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private void writePartner(SnapshotOutput out, Partner partner) throws IOException {
+		out.writeString(partner.getId());
+		out.writeString(partner.getName());
+		out.writeString(partner.getAddress());
+
+		var status = partner.getStatus();
+		if (status instanceof ElitePartnerStatus) {
+			out.writeByte(STATUS_ELITE);
+		} else if (status instanceof SelectionPartnerStatus) {
+			out.writeByte(STATUS_SELECTION);
+		} else {
+			out.writeByte(STATUS_NORMAL);
+		}
+		out.writeDouble(partner.getPoints());
+		out.writeLong(partner.getNotificationCursor());
+		out.writeDouble(partner.getTotalPurchases());
+		out.writeDouble(partner.getTotalSales());
+		out.writeDouble(partner.getTotalSalesPaid());
+
+		var blacklistedProducts = partner.getBlacklistedProductNotifications().collect(Collectors.toList());
+		out.writeInt(blacklistedProducts.size());
+		for (var product : blacklistedProducts) {
+			out.writeInt(_productIdxs.get(product));
+		}
+		out.endRecord();
+	}
+
+	/**
+	 * Writes a batch onto the current record
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param batch
+	 *            The batch to write
+	 */
+	private void writeBatch(SnapshotOutput out, Batch batch) {
+		out.writeInt(_productIdxs.get(batch.getProduct()));
+		out.writeInt(_partnerIdxs.get(batch.getPartner()));
+		out.writeInt(batch.getQuantity());
+		out.writeDouble(batch.getUnitPrice());
+	}
+
+	/**
+	 * Writes a transaction
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param transaction
+	 *            The transaction to write
+	 * @param productIdxs
+	 *            The index of each product
+	 * @param partnerIdxs
+	 *            The index of each partner
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	// Note: Also used by `TransactionSegment`, with it's own indexes
+	static void writeTransaction(SnapshotOutput out, Transaction transaction, Map<Product, Integer> productIdxs,
+			Map<Partner, Integer> partnerIdxs) throws IOException {
+		if (transaction instanceof Purchase) {
+			out.writeByte(TRANSACTION_PURCHASE);
+		} else if (transaction instanceof Sale) {
+			out.writeByte(TRANSACTION_SALE);
+		} else {
+			out.writeByte(TRANSACTION_BREAKDOWN);
+		}
+		out.writeInt(transaction.getId());
+		out.writeInt(productIdxs.get(transaction.getProduct()));
+		out.writeInt(partnerIdxs.get(transaction.getPartner()));
+		out.writeInt(transaction.getQuantity());
+
+		if (transaction instanceof Purchase) {
+			var purchase = (Purchase) transaction;
+			out.writeInt(purchase.getPaymentDate());
+			out.writeDouble(purchase.getTotalCost());
+		} else if (transaction instanceof Sale) {
+			var sale = (Sale) transaction;
+			out.writeInt(sale.getPaymentDeadline());
+			out.writeDouble(sale.getBaseCost());
+			out.writeBoolean(sale.isPaid());
+			if (sale.isPaid()) {
+				out.writeInt(sale.getPaymentDate().getAsInt());
+				out.writeDouble(sale.getPaidCost().getAsDouble());
+			}
+		} else {
+			var breakdown = (BreakdownTransaction) transaction;
+			out.writeInt(breakdown.getDate());
+			out.writeDouble(breakdown.getBaseCost());
+			var productsCreated = breakdown.getProductsCreated();
+			out.writeInt(productsCreated.size());
+			for (var pair : productsCreated) {
+				out.writeInt(productIdxs.get(pair.getLhs()));
+				out.writeInt(pair.getRhs().getLhs());
+				out.writeDouble(pair.getRhs().getRhs());
+			}
+		}
+		out.endRecord();
+	}
+
+	/**
+	 * Writes a notification
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param owner
+	 *            The index of the partner with the notification pending, or `NOTIFICATION_OWNER_LOG`
+	 * @param notification
+	 *            The notification to write
+	 * @throws IOException
+	 *             If unable to write
+	 */
+	private void writeNotification(SnapshotOutput out, int owner, Notification notification) throws IOException {
+		out.writeInt(owner);
+		out.writeByte(notification instanceof BargainNotification ? NOTIFICATION_BARGAIN : NOTIFICATION_NEW);
+		writeBatch(out, notification.getBatch());
+		out.endRecord();
+	}
+
+	/**
+	 * Reads a warehouse
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param index
+	 *            The index of the snapshot, if any
+	 * @return The warehouse
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	private Warehouse readWarehouse(SnapshotInput in, Optional<WarehouseIndex> index) throws IOException {
+		in.nextRecord();
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a warehouse snapshot");
+		}
+		_version = in.readInt();
+		if (_version != VERSION && _version != VERSION_WITHOUT_HISTORY_INDEX) {
+			throw new IOException("Unsupported snapshot version " + _version);
+		}
+		int date = in.readInt();
+		int availableBalance = in.readInt();
+		int nextTransactionId = in.readInt();
+
+		int productsCount = readSection(in, SECTION_PRODUCTS);
+		for (int productIdx = 0; productIdx < productsCount; productIdx++) {
+			_products.add(readProduct(in));
+		}
+
+		// Note: Partner's status and points are only restored after their transactions
+		int partnersCount = readSection(in, SECTION_PARTNERS);
+		var partnerStatuses = new ArrayList<Pair<PartnerStatus, Double>>();
+		for (int partnerIdx = 0; partnerIdx < partnersCount; partnerIdx++) {
+			_partners.add(readPartner(in, partnerStatuses));
+		}
+
+		// Note: Without an index, each collation key is only rebuilt once needed
+		if (index.isPresent()) {
+			index.get().restore(_products, _partners);
+		}
+
+		int batchesCount = readSection(in, SECTION_BATCHES);
+		var batches = new ArrayList<Batch>(batchesCount);
+		for (int batchIdx = 0; batchIdx < batchesCount; batchIdx++) {
+			in.nextRecord();
+			batches.add(readBatch(in));
+		}
+
+		int transactionsCount = readSection(in, SECTION_TRANSACTIONS);
+		var unpaidSales = new ArrayList<Sale>();
+		if (_version == VERSION_WITHOUT_HISTORY_INDEX) {
+			for (int transactionIdx = 0; transactionIdx < transactionsCount; transactionIdx++) {
+				in.nextRecord();
+				var transaction = readTransaction(in, transactionIdx, _products, _partners);
+				addPartnerTransaction(transaction);
+				_transactions.add(transaction);
+			}
+			_partners.stream().flatMap(Partner::getSales).filter(sale -> !sale.isPaid()).forEach(unpaidSales::add);
+		} else {
+			readHistory(in, transactionsCount, unpaidSales);
+		}
+		for (int partnerIdx = 0; partnerIdx < partnersCount; partnerIdx++) {
+			var pair = partnerStatuses.get(partnerIdx);
+			_partners.get(partnerIdx).restoreStatus(pair.getLhs(), pair.getRhs());
+		}
+
+		int notificationsCount = readSection(in, SECTION_NOTIFICATIONS);
+		in.nextRecord();
+		long firstSequence = in.readLong();
+		var logNotifications = new ArrayList<Notification>();
+		for (int notificationIdx = 0; notificationIdx < notificationsCount; notificationIdx++) {
+			in.nextRecord();
+			int owner = in.readInt();
+			var notification = readNotification(in);
+			if (owner == NOTIFICATION_OWNER_LOG) {
+				logNotifications.add(notification);
+			} else {
+				readRef(_partners, owner).addNotifications(notification);
+			}
+		}
+		var cursors = _partners.stream().map(Partner::getNotificationCursor).collect(Collectors.toList());
+		for (var cursor : cursors) {
+			if (cursor < firstSequence || cursor > firstSequence + logNotifications.size()) {
+				throw new IOException("Corrupt snapshot: Bad notification cursor " + cursor);
+			}
+		}
+		var notificationLog = new NotificationLog(firstSequence, logNotifications, cursors);
+
+		if (nextTransactionId != transactionsCount) {
+			throw new IOException("Corrupt snapshot: Bad next transaction id " + nextTransactionId);
+		}
+
+		return new Warehouse(date, availableBalance, _transactions, _partners, _products, batches, unpaidSales,
+				notificationLog);
+	}
+
+	/**
+	 * Reads the index of all transactions, and all unpaid sales, leaving all other transactions to be decoded once
+	 * they're accessed
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param transactionsCount
+	 *            The number of transactions
+	 * @param unpaidSales
+	 *            List to add all unpaid sales to
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	// Note: The history is added as a single sealed segment of all transactions
+	private void readHistory(SnapshotInput in, int transactionsCount, List<Sale> unpaidSales) throws IOException {
+		_transactions.addSegment(transactionsCount, this::decodeTransaction);
+
+		in.nextRecord();
+		int historySize = in.readInt();
+		int[] unpaidSaleIds = readIds(in, transactionsCount);
+		for (var partner : _partners) {
+			var purchases = new TransactionList<>(Purchase.class, _transactions, readIds(in, transactionsCount));
+			var sales = new TransactionList<>(Sale.class, _transactions, readIds(in, transactionsCount));
+			var breakdownTransactions = new TransactionList<>(BreakdownTransaction.class, _transactions,
+					readIds(in, transactionsCount));
+			partner.restoreTransactions(purchases, sales, breakdownTransactions);
+		}
+		_historyPositions = in.readIntView(transactionsCount);
+
+		// Note: The transaction records are kept as they are, and skipped over
+		_history = in.slice(historySize);
+
+		// Note: Unpaid sales may still change, so they're read now and always kept
+		for (var saleId : unpaidSaleIds) {
+			var transaction = _transactions.get(saleId);
+			if (!(transaction instanceof Sale) || ((Sale) transaction).isPaid()) {
+				throw new IOException("Corrupt snapshot: Transaction " + saleId + " isn't an unpaid sale");
+			}
+			_transactions.pin(transaction);
+			unpaidSales.add((Sale) transaction);
+		}
+	}
+
+	/**
+	 * Reads transaction ids from the current record
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param transactionsCount
+	 *            The number of transactions
+	 * @return The ids
+	 * @throws IOException
+	 *             If unable to read, or any id isn't of a transaction
+	 */
+	private static int[] readIds(SnapshotInput in, int transactionsCount) throws IOException {
+		int idsCount = in.readInt();
+		if (idsCount < 0 || idsCount > transactionsCount) {
+			throw new IOException("Corrupt snapshot: Bad transaction count " + idsCount);
+		}
+
+		var ids = new int[idsCount];
+		for (int idIdx = 0; idIdx < idsCount; idIdx++) {
+			ids[idIdx] = in.readInt();
+			if (ids[idIdx] < 0 || ids[idIdx] >= transactionsCount) {
+				throw new IOException("Corrupt snapshot: Bad transaction id " + ids[idIdx]);
+			}
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Decodes a transaction from the history
+	 * 
+	 * @param id
+	 *            The id of the transaction
+	 * @return The transaction
+	 * @throws IOException
+	 *             If the transaction's record is corrupt
+	 */
+	private Transaction decodeTransaction(int id) throws IOException {
+		// Note: Each transaction is decoded with it's own input, as they may be decoded in any order
+		var in = _history.duplicate();
+		in.seekRecord(_historyPositions.get(id));
+		return readTransaction(in, id, _products, _partners);
+	}
+
+	/**
+	 * Reads the record starting a section
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param tag
+	 *            The expected tag of the section
+	 * @return The number of values in the section
+	 * @throws IOException
+	 *             If unable to read, or the section isn't the expected one
+	 */
+	private static int readSection(SnapshotInput in, int tag) throws IOException {
+		in.nextRecord();
+		int actualTag = in.readByte();
+		if (actualTag != tag) {
+			throw new IOException("Corrupt snapshot: Expected section " + tag + ", found " + actualTag);
+		}
+
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Corrupt snapshot: Bad section size " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a reference to a value
+	 * 
+	 * @param <T>
+	 *            The type of the values
+	 * @param values
+	 *            All values read so far
+	 * @param idx
+	 *            The index of the value
+	 * @return The value
+	 * @throws IOException
+	 *             If the index isn't of any value read so far
+	 */
+	private static <T> T readRef(List<T> values, int idx) throws IOException {
+		if (idx < 0 || idx >= values.size()) {
+			throw new IOException("Corrupt snapshot: Bad reference " + idx);
+		}
+		return values.get(idx);
+	}
+
+	/**
+	 * Reads a product
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @return The product
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	private Product readProduct(SnapshotInput in) throws IOException {
+		in.nextRecord();
+		var id = in.readString();
+
+		Product product;
+		if (in.readBoolean()) {
+			double costFactor = in.readDouble();
+			int componentsCount = in.readInt();
+			var productQuantities = new LinkedHashMap<Product, Integer>();
+			for (int componentIdx = 0; componentIdx < componentsCount; componentIdx++) {
+				var component = readRef(_products, in.readInt());
+				productQuantities.put(component, in.readInt());
+			}
+			product = new DerivedProduct(id, Recipe.fromProducts(productQuantities), costFactor);
+		} else {
+			product = new Product(id);
+		}
+
+		boolean hasMinPrice = in.readBoolean();
+		double minPrice = in.readDouble();
+		if (hasMinPrice) {
+			product.setMinPrice(minPrice);
+		}
+		boolean hasMaxPrice = in.readBoolean();
+		double maxPrice = in.readDouble();
+		if (hasMaxPrice) {
+			product.setMaxPrice(maxPrice);
+		}
+
+		return product;
+	}
+
+	/**
+	 * Reads a partner, without any of their transactions or notifications
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param partnerStatuses
+	 *            List to add the partner's status and points to
+	 * @return The partner
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	private Partner readPartner(SnapshotInput in, List<Pair<PartnerStatus, Double>> partnerStatuses)
+			throws IOException {
+		in.nextRecord();
+		var partner = new Partner(in.readString(), in.readString(), in.readString(), _transactions);
+
+		int status = in.readByte();
+		switch (status) {
+			case STATUS_NORMAL:
+				partnerStatuses.add(new Pair<>(new NormalPartnerStatus(), in.readDouble()));
+				break;
+			case STATUS_SELECTION:
+				partnerStatuses.add(new Pair<>(new SelectionPartnerStatus(), in.readDouble()));
+				break;
+			case STATUS_ELITE:
+				partnerStatuses.add(new Pair<>(new ElitePartnerStatus(), in.readDouble()));
+				break;
+			default:
+				throw new IOException("Corrupt snapshot: Bad partner status " + status);
+		}
+		partner.setNotificationCursor(in.readLong());
+		if (_version != VERSION_WITHOUT_HISTORY_INDEX) {
+			partner.restoreTotals(in.readDouble(), in.readDouble(), in.readDouble());
+		}
+
+		int blacklistedCount = in.readInt();
+		for (int productIdx = 0; productIdx < blacklistedCount; productIdx++) {
+			partner.toggleIsProductNotificationBlacklisted(readRef(_products, in.readInt()));
+		}
+
+		return partner;
+	}
+
+	/**
+	 * Reads a batch from the current record
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @return The batch
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	private Batch readBatch(SnapshotInput in) throws IOException {
+		var product = readRef(_products, in.readInt());
+		var partner = readRef(_partners, in.readInt());
+		int quantity = in.readInt();
+		double unitPrice = in.readDouble();
+		if (quantity < 0 || !(unitPrice >= 0.0)) {
+			throw new IOException("Corrupt snapshot: Bad batch");
+		}
+
+		return new Batch(product, partner, quantity, unitPrice);
+	}
+
+	/**
+	 * Adds a transaction to it's partner
+	 * 
+	 * @param transaction
+	 *            The transaction to add
+	 */
+	private static void addPartnerTransaction(Transaction transaction) {
+		var partner = transaction.getPartner();
+		if (transaction instanceof Purchase) {
+			partner.addPurchase((Purchase) transaction);
+		} else if (transaction instanceof Sale) {
+			partner.addSale((Sale) transaction);
+		} else {
+			// Note: This changes the partner's points, but they're restored after all transactions
+			partner.addBreakdownTransaction((BreakdownTransaction) transaction);
+		}
+	}
+
+	/**
+	 * Reads a transaction from the current record
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @param expectedId
+	 *            The id the transaction should have
+	 * @param products
+	 *            All products, by index
+	 * @param partners
+	 *            All partners, by index
+	 * @return The transaction
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	// Note: Also used by `TransactionSegment`, with it's own tables
+	static Transaction readTransaction(SnapshotInput in, int expectedId, List<Product> products,
+			List<Partner> partners) throws IOException {
+		int type = in.readByte();
+		int id = in.readInt();
+		if (id != expectedId) {
+			throw new IOException("Corrupt snapshot: Expected transaction " + expectedId + ", found " + id);
+		}
+		var product = readRef(products, in.readInt());
+		var partner = readRef(partners, in.readInt());
+		int quantity = in.readInt();
+
+		switch (type) {
+			case TRANSACTION_PURCHASE:
+				return new Purchase(id, in.readInt(), product, partner, quantity, in.readDouble());
+
+			case TRANSACTION_SALE: {
+				int paymentDeadline = in.readInt();
+				double baseCost = in.readDouble();
+				var sale = new Sale(id, product, partner, quantity, baseCost, paymentDeadline);
+				if (in.readBoolean()) {
+					sale.restorePayment(in.readInt(), in.readDouble());
+				}
+				return sale;
+			}
+
+			case TRANSACTION_BREAKDOWN: {
+				int date = in.readInt();
+				double baseCost = in.readDouble();
+				int componentsCount = in.readInt();
+				var productsCreated = new ArrayList<Pair<Product, Pair<Integer, Double>>>(componentsCount);
+				for (int componentIdx = 0; componentIdx < componentsCount; componentIdx++) {
+					var component = readRef(products, in.readInt());
+					productsCreated.add(new Pair<>(component, new Pair<>(in.readInt(), in.readDouble())));
+				}
+				return new BreakdownTransaction(id, date, product, partner, quantity, baseCost, productsCreated);
+			}
+
+			default:
+				throw new IOException("Corrupt snapshot: Bad transaction type " + type);
+		}
+	}
+
+	/**
+	 * Reads a notification from the current record
+	 * 
+	 * @param in
+	 *            The input to read from
+	 * @return The notification
+	 * @throws IOException
+	 *             If unable to read, or the snapshot is corrupt
+	 */
+	private Notification readNotification(SnapshotInput in) throws IOException {
+		int type = in.readByte();
+		// Note: The batch may no longer be in the warehouse, so we create a new one
+		var batch = readBatch(in);
+		switch (type) {
+			case NOTIFICATION_NEW:
+				return new NewNotification(batch);
+			case NOTIFICATION_BARGAIN:
+				return new BargainNotification(batch);
+			default:
+				throw new IOException("Corrupt snapshot: Bad notification type " + type);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package ggc.core;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Version of a warehouse, as it was when opened.
+ * 
+ * Everything is retrieved, and formatted, as it was at this version, while the warehouse keeps being changed, so
+ * reports over the whole warehouse are consistent. Opening one copies the whole warehouse, so it's costly, see
+ * `WarehouseManager.openVersion`. Readers opening a version while the warehouse wasn't changed share it, and it's
+ * reclaimed once all of them close it.
+ */
+public class WarehouseVersion implements AutoCloseable {
+	/** Manager of the warehouse at this version, until closed */
+	// Note: Shared by all readers of this version, see `WarehouseManager.openVersion`
+	private Optional<WarehouseManager> _manager;
+
+	/**
+	 * Opens a version
+	 * 
+	 * @param manager
+	 *            The manager of the warehouse at this version
+	 */
+	// Note: Package private to ensure we don't construct it outside of `core`.
+	WarehouseVersion(WarehouseManager manager) {
+		_manager = Optional.of(manager);
+	}
+
+	/**
+	 * Retrieves the manager of the warehouse at this version
+	 * 
+	 * @return The manager
+	 */
+	private WarehouseManager manager() {
+		return _manager.orElseThrow(() -> new IllegalStateException("Warehouse version already closed"));
+	}
+
+	/**
+	 * Retrieves the date at this version
+	 * 
+	 * @return The date
+	 */
+	public int getDate() {
+		return manager().getDate();
+	}
+
+	/**
+	 * Retrieves the available balance at this version
+	 * 
+	 * @return The available balance
+	 */
+	public double getAvailableBalance() {
+		return manager().getAvailableBalance();
+	}
+
+	/**
+	 * Retrieves the accounting balance at this version
+	 * 
+	 * @return The accounting balance
+	 */
+	public double getAccountingBalance() {
+		return manager().getAccountingBalance();
+	}
+
+	/**
+	 * Retrieves a stream over all products at this version, in collation order of their ids
+	 * 
+	 * @return All products
+	 */
+	public Stream<Product> getProducts() {
+		return manager().getProducts();
+	}
+
+	/**
+	 * Retrieves a stream over all partners at this version, in collation order of their ids
+	 * 
+	 * @return All partners
+	 */
+	public Stream<Partner> getPartners() {
+		return manager().getPartners();
+	}
+
+	/**
+	 * Retrieves a stream over all batches at this version
+	 * 
+	 * @return All batches
+	 */
+	public Stream<Batch> getBatches() {
+		return manager().getBatches();
+	}
+
+	/**
+	 * Retrieves a stream over all transactions at this version
+	 * 
+	 * @return All transactions
+	 */
+	public Stream<Transaction> getTransactions() {
+		return manager().getTransactions();
+	}
+
+	/**
+	 * Formats a value retrieved from this version
+	 * 
+	 * @param <T>
+	 *            The type of the value to format
+	 * @param value
+	 *            The value to format
+	 * @return The value formatted
+	 */
+	public <T extends WarehouseFormattable> String format(T value) {
+		return manager().format(value);
+	}
+
+	/** Closes this version, so it's reclaimed once all other readers close it */
+	@Override
+	public void close() {
+		_manager = Optional.empty();
+	}
+}
@@ -0,0 +1,165 @@
+package ggc.core.util;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Data split into blocks of the same size, each only retrieved once any of it's data is first read.
+ * 
+ * Data is addressed by it's position in the whole data, which may be larger than a single buffer. Data within a
+ * single block is read as a view over the block, and only data spanning many blocks is copied.
+ */
+public class BlockBuffer {
+	/** Retriever of a block of data */
+	@FunctionalInterface
+	public interface BlockLoader {
+		/**
+		 * Retrieves a block
+		 * 
+		 * @param blockIdx
+		 *            The index of the block
+		 * @return The block, from position 0 to the size of the block
+		 * @throws IOException
+		 *             If unable to retrieve it
+		 */
+		ByteBuffer load(int blockIdx) throws IOException;
+	}
+
+	/** Size of the data */
+	private long _size;
+
+	/** Size of each block, but the last */
+	private int _blockSize;
+
+	/** Retriever of each block */
+	private BlockLoader _loader;
+
+	/** Each block, once retrieved */
+	// Note: Softly referenced, so that, like the pages of a mapped file, blocks no longer read may be reclaimed,
+	//       and are retrieved again once read. Many readers may retrieve a block at once, in which case the last
+	//       one retrieved is kept.
+	private AtomicReferenceArray<SoftReference<ByteBuffer>> _blocks;
+
+	/**
+	 * Creates a buffer
+	 * 
+	 * @param size
+	 *            The size of the data
+	 * @param blockSize
+	 *            The size of each block, but the last
+	 * @param loader
+	 *            The retriever of each block
+	 */
+	public BlockBuffer(long size, int blockSize, BlockLoader loader) {
+		assert size >= 0 && blockSize > 0;
+		_size = size;
+		_blockSize = blockSize;
+		_loader = loader;
+		_blocks = new AtomicReferenceArray<>((int) ((size + blockSize - 1) / blockSize));
+	}
+
+	/**
+	 * Creates a buffer over all of a buffer, as a single block
+	 * 
+	 * @param buffer
+	 *            The buffer, from it's position to it's limit
+	 * @return The buffer
+	 */
+	public static BlockBuffer wrap(ByteBuffer buffer) {
+		var block = buffer.slice();
+		return new BlockBuffer(block.limit(), Math.max(block.limit(), 1), _blockIdx -> block);
+	}
+
+	/** Returns the size of the data */
+	public long size() {
+		return _size;
+	}
+
+	/**
+	 * Retrieves a block
+	 * 
+	 * @param blockIdx
+	 *            The index of the block
+	 * @return The block
+	 * @throws IOException
+	 *             If unable to retrieve it
+	 */
+	private ByteBuffer block(int blockIdx) throws IOException {
+		var reference = _blocks.get(blockIdx);
+		var block = reference != null ? reference.get() : null;
+		if (block == null) {
+			block = _loader.load(blockIdx);
+			_blocks.set(blockIdx, new SoftReference<>(block));
+		}
+
+		return block;
+	}
+
+	/**
+	 * Checks that a range is within the data
+	 * 
+	 * @param position
+	 *            The position of the range
+	 * @param length
+	 *            The length of the range
+	 * @throws IOException
+	 *             If it isn't
+	 */
+	private void checkRange(long position, long length) throws IOException {
+		if (position < 0 || length < 0 || position > _size - length) {
+			throw new IOException("Corrupt data: Bad range of " + length + " bytes at " + position);
+		}
+	}
+
+	/**
+	 * Reads an integer
+	 * 
+	 * @param position
+	 *            The position of the integer
+	 * @return The integer
+	 * @throws IOException
+	 *             If the integer isn't within the data, or unable to retrieve it's block
+	 */
+	public int getInt(long position) throws IOException {
+		checkRange(position, Integer.BYTES);
+		int offset = (int) (position % _blockSize);
+		if (offset <= _blockSize - Integer.BYTES) {
+			return block((int) (position / _blockSize)).getInt(offset);
+		}
+
+		return slice(position, Integer.BYTES).getInt(0);
+	}
+
+	/**
+	 * Retrieves part of the data
+	 * 
+	 * @param position
+	 *            The position of the part
+	 * @param length
+	 *            The length of the part
+	 * @return The part, as a view over it's block if it's within a single block
+	 * @throws IOException
+	 *             If the part isn't within the data, or unable to retrieve any of it's blocks
+	 */
+	public ByteBuffer slice(long position, int length) throws IOException {
+		checkRange(position, length);
+		int blockIdx = (int) (position / _blockSize);
+		int offset = (int) (position % _blockSize);
+		if (offset + (long) length <= _blockSize) {
+			return block(blockIdx).slice(offset, length);
+		}
+
+		// Note: Copied from each block it spans
+		var slice = ByteBuffer.allocate(length);
+		while (slice.hasRemaining()) {
+			var block = block(blockIdx++);
+			int partLength = Math.min(block.limit() - offset, slice.remaining());
+			slice.put(block.slice(offset, partLength));
+			offset = 0;
+		}
+
+		return slice.flip();
+	}
+}
@@ -0,0 +1,308 @@
+package ggc.core.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of data into independently compressed blocks.
+ * 
+ * Data is split into blocks of the same size, each compressed on it's own, so they may all be compressed and
+ * decompressed in parallel. Compressed data starts with a header with the size of the data and the compressed size and
+ * checksum of each block, followed by all compressed blocks, in order, so that a corrupt block is found before
+ * decompressing it.
+ */
+public class BlockCompression {
+	/** Magic number at the start of all compressed data */
+	private static final int MAGIC = 0x4747_435A;
+
+	/** Version of the compressed format */
+	private static final int VERSION = 1;
+
+	/** Size of each block, before compression */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	/** Size of the header, before the block sizes and checksums */
+	private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+	/** Returns if `buffer` starts with compressed data, at it's position */
+	public static boolean isCompressed(ByteBuffer buffer) {
+		return buffer.remaining() >= Integer.BYTES && buffer.getInt(buffer.position()) == MAGIC;
+	}
+
+	/** Compresses all of `data`, from it's position to it's limit */
+	public static ByteBuffer compress(ByteBuffer data) {
+		// Compress all blocks in parallel
+		int blocksCount = (data.remaining() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		List<ByteBuffer> blocks = IntStream.range(0, blocksCount).parallel()
+				.mapToObj(blockIdx -> compressBlock(blockSlice(data, data.remaining(), blockIdx)))
+				.collect(Collectors.toList());
+
+		// Then write the header, followed by all blocks
+		int compressedSize = blocks.stream().mapToInt(ByteBuffer::remaining).sum();
+		var compressed = ByteBuffer.allocate(HEADER_SIZE + blocksCount * 2 * Integer.BYTES + compressedSize);
+		compressed.putInt(MAGIC);
+		compressed.putInt(VERSION);
+		compressed.putLong(data.remaining());
+		compressed.putInt(blocksCount);
+		for (var block : blocks) {
+			compressed.putInt(block.remaining());
+			compressed.putInt(checksum(block));
+		}
+		for (var block : blocks) {
+			compressed.put(block);
+		}
+
+		return compressed.flip();
+	}
+
+	/**
+	 * Decompresses data starting at `buffer`'s position, moving it to after the compressed data
+	 * 
+	 * All blocks are decompressed in parallel, after checking their checksum.
+	 * 
+	 * @param buffer
+	 *            The buffer with the compressed data
+	 * @return The decompressed data
+	 * @throws IOException
+	 *             If the compressed data is corrupt, or too large for a single buffer
+	 */
+	public static ByteBuffer decompress(ByteBuffer buffer) throws IOException {
+		var blocks = readBlocks(buffer);
+		if (blocks.size > Integer.MAX_VALUE) {
+			throw new IOException("Compressed data too large to decompress at once: " + blocks.size);
+		}
+
+		// Check all blocks before decompressing any, so a corrupt block is found without decompressing the rest
+		var corruptBlock = IntStream.range(0, blocks.count()).parallel()
+				.filter(blockIdx -> checksum(blocks.compressed(blockIdx)) != blocks.checksums[blockIdx]).findFirst();
+		if (corruptBlock.isPresent()) {
+			throw new IOException("Corrupt compressed data: Checksum mismatch in block " + corruptBlock.getAsInt());
+		}
+
+		// Then decompress them all in parallel, each onto it's own part of the data
+		var data = ByteBuffer.allocate((int) blocks.size);
+		try {
+			IntStream.range(0, blocks.count()).parallel().forEach(blockIdx -> {
+				try {
+					decompressBlock(blocks.compressed(blockIdx), blockIdx, blockSlice(data, data.limit(), blockIdx));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw new IOException("Corrupt compressed data: " + e.getCause().getMessage(), e.getCause());
+		}
+
+		return data;
+	}
+
+	/**
+	 * Decompresses data starting at `buffer`'s position lazily, moving it to after the compressed data
+	 * 
+	 * Each block is only checked and decompressed once any of it's data is first read, so data larger than a single
+	 * buffer may be decompressed, and only the parts read take up memory.
+	 * 
+	 * @param buffer
+	 *            The buffer with the compressed data, which must stay valid while the data is read
+	 * @return The decompressed data
+	 * @throws IOException
+	 *             If the header of the compressed data is corrupt
+	 */
+	public static BlockBuffer decompressLazily(ByteBuffer buffer) throws IOException {
+		var blocks = readBlocks(buffer);
+		return new BlockBuffer(blocks.size, BLOCK_SIZE, blockIdx -> {
+			var compressed = blocks.compressed(blockIdx);
+			if (checksum(compressed) != blocks.checksums[blockIdx]) {
+				throw new IOException("Corrupt compressed data: Checksum mismatch in block " + blockIdx);
+			}
+
+			long blockStart = (long) blockIdx * BLOCK_SIZE;
+			var data = ByteBuffer.allocate((int) Math.min(BLOCK_SIZE, blocks.size - blockStart));
+			try {
+				decompressBlock(compressed, blockIdx, data);
+			} catch (IOException e) {
+				throw new IOException("Corrupt compressed data: " + e.getMessage(), e);
+			}
+			return data.flip();
+		});
+	}
+
+	/** Compressed blocks, as described by the header of compressed data */
+	private static class Blocks {
+		/** The buffer with the compressed data */
+		private ByteBuffer buffer;
+
+		/** Size of the data, once decompressed */
+		private long size;
+
+		/** Position of each compressed block in the buffer */
+		private int[] positions;
+
+		/** Size of each compressed block */
+		private int[] sizes;
+
+		/** Checksum of each compressed block */
+		private int[] checksums;
+
+		/** Returns the number of blocks */
+		private int count() {
+			return sizes.length;
+		}
+
+		/** Returns a compressed block */
+		private ByteBuffer compressed(int blockIdx) {
+			return buffer.slice(positions[blockIdx], sizes[blockIdx]);
+		}
+	}
+
+	/**
+	 * Reads the header of compressed data starting at `buffer`'s position, moving it to after the compressed data
+	 * 
+	 * @param buffer
+	 *            The buffer with the compressed data
+	 * @return The compressed blocks
+	 * @throws IOException
+	 *             If the header is corrupt
+	 */
+	private static Blocks readBlocks(ByteBuffer buffer) throws IOException {
+		var blocks = new Blocks();
+		blocks.buffer = buffer;
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not compressed data");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported compression version " + version);
+			}
+
+			blocks.size = buffer.getLong();
+			int blocksCount = buffer.getInt();
+			if (blocks.size < 0 || blocksCount != (blocks.size + BLOCK_SIZE - 1) / BLOCK_SIZE) {
+				throw new IOException(
+						"Corrupt compressed data: Bad size " + blocks.size + " for " + blocksCount + " blocks");
+			}
+
+			blocks.sizes = new int[blocksCount];
+			blocks.checksums = new int[blocksCount];
+			for (int blockIdx = 0; blockIdx < blocksCount; blockIdx++) {
+				blocks.sizes[blockIdx] = buffer.getInt();
+				blocks.checksums[blockIdx] = buffer.getInt();
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt compressed data: Unexpected end of file", e);
+		}
+
+		// Find where each block starts
+		blocks.positions = new int[blocks.count()];
+		long position = buffer.position();
+		for (int blockIdx = 0; blockIdx < blocks.count(); blockIdx++) {
+			if (blocks.sizes[blockIdx] < 0 || position + blocks.sizes[blockIdx] > buffer.limit()) {
+				throw new IOException("Corrupt compressed data: Bad size of block " + blockIdx);
+			}
+			blocks.positions[blockIdx] = (int) position;
+			position += blocks.sizes[blockIdx];
+		}
+
+		buffer.position((int) position);
+		return blocks;
+	}
+
+	/**
+	 * Retrieves a block of data
+	 * 
+	 * @param data
+	 *            The data, from it's position
+	 * @param size
+	 *            The size of the data
+	 * @param blockIdx
+	 *            The index of the block
+	 * @return The block
+	 */
+	private static ByteBuffer blockSlice(ByteBuffer data, int size, int blockIdx) {
+		int blockStart = blockIdx * BLOCK_SIZE;
+		return data.slice(data.position() + blockStart, Math.min(BLOCK_SIZE, size - blockStart));
+	}
+
+	/**
+	 * Compresses a block
+	 * 
+	 * @param block
+	 *            The block to compress
+	 * @return The compressed block
+	 */
+	private static ByteBuffer compressBlock(ByteBuffer block) {
+		var deflater = new Deflater();
+		try {
+			deflater.setInput(block);
+			deflater.finish();
+
+			// Note: Incompressible blocks may grow slightly, so we grow the output until it all fits
+			var compressed = ByteBuffer.allocate(block.remaining() / 2 + 64);
+			while (!deflater.finished()) {
+				if (!compressed.hasRemaining()) {
+					compressed = ByteBuffer.allocate(compressed.capacity() * 2).put(compressed.flip());
+				}
+				deflater.deflate(compressed);
+			}
+
+			return compressed.flip();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Retrieves the checksum of a block
+	 * 
+	 * @param block
+	 *            The block, from it's position to it's limit
+	 * @return The checksum
+	 */
+	private static int checksum(ByteBuffer block) {
+		var checksum = new CRC32();
+		checksum.update(block.duplicate());
+		return (int) checksum.getValue();
+	}
+
+	/**
+	 * Decompresses a block
+	 * 
+	 * @param block
+	 *            The compressed block
+	 * @param blockIdx
+	 *            The index of the block
+	 * @param data
+	 *            The buffer to decompress the block onto, exactly the size of the decompressed block
+	 * @throws IOException
+	 *             If the block is corrupt
+	 */
+	private static void decompressBlock(ByteBuffer block, int blockIdx, ByteBuffer data) throws IOException {
+		var inflater = new Inflater();
+		try {
+			inflater.setInput(block);
+			while (!inflater.finished() && data.hasRemaining()) {
+				if (inflater.inflate(data) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+			}
+
+			if (!inflater.finished() || data.hasRemaining()) {
+				throw new IOException("Bad size of block " + blockIdx);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Bad data in block " + blockIdx, e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,520 @@
+package ggc.core.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tokenizer of lines of UTF-8 text into fields.
+ *
+ * Reads lines from a channel, or from a buffer of whole lines, and splits each line into fields on a separator,
+ * keeping only the position of each field. Fields are only decoded into strings, or parsed into numbers, when
+ * retrieved, straight from the bytes read.
+ * <p>
+ * Lines and fields are split the same way as `BufferedReader.readLine` and `String.split` would, so lines end on
+ * `\n`, `\r` or `\r\n`, and trailing empty fields are dropped.
+ * </p>
+ */
+public class LineTokenizer {
+	/** Initial size of the buffer when reading from a channel */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Max number of symbols kept */
+	private static final int MAX_SYMBOLS = 1 << 16;
+
+	/** Max number of digits parsed directly as a double, so it's exactly representable */
+	private static final int MAX_DOUBLE_DIGITS = 15;
+
+	/** All powers of ten exactly representable as a double, up to `MAX_DOUBLE_DIGITS` */
+	private static final double[] POWERS_OF_TEN = new double[MAX_DOUBLE_DIGITS + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int power = 1; power <= MAX_DOUBLE_DIGITS; power++) {
+			POWERS_OF_TEN[power] = POWERS_OF_TEN[power - 1] * 10.0;
+		}
+	}
+
+	/** The channel we're reading from, if any */
+	private ReadableByteChannel _channel;
+
+	/** If we've read everything from the channel */
+	private boolean _isEndOfInput;
+
+	/** Buffer of all bytes read, with the unread ones between `_position` and it's limit */
+	private ByteBuffer _buffer;
+
+	/** Position of the next line in the buffer */
+	private int _position;
+
+	/** If the previous line ended on a `\r`, so a `\n` after it must be skipped */
+	private boolean _skipLineFeed;
+
+	/** The separator between fields */
+	private byte _separator;
+
+	/** Start of each field of the current line in the buffer */
+	private int[] _fieldStarts = new int[16];
+
+	/** End of each field of the current line in the buffer */
+	private int[] _fieldEnds = new int[16];
+
+	/** Number of fields of the current line */
+	private int _fieldCount;
+
+	/** Scratch space for decoding fields, when the buffer isn't backed by an array */
+	private byte[] _scratch = new byte[256];
+
+	/** Bytes of each symbol, by it's hash */
+	// Note: Open addressing, so we don't allocate anything when looking up a symbol
+	private byte[][] _symbolBytes = new byte[256][];
+
+	/** All symbols, at the same index as their bytes */
+	private String[] _symbols = new String[256];
+
+	/** Number of symbols */
+	private int _symbolCount;
+
+	/**
+	 * Creates a tokenizer reading from a channel
+	 *
+	 * @param channel
+	 *            The channel to read from
+	 * @param separator
+	 *            The separator between fields, an ASCII character
+	 */
+	public LineTokenizer(ReadableByteChannel channel, char separator) {
+		this(ByteBuffer.allocate(BUFFER_SIZE).limit(0), separator);
+		_channel = channel;
+		_isEndOfInput = false;
+	}
+
+	/**
+	 * Creates a tokenizer reading from a buffer of whole lines
+	 *
+	 * @param buffer
+	 *            The buffer to read from, between it's position and limit
+	 * @param separator
+	 *            The separator between fields, an ASCII character
+	 */
+	public LineTokenizer(ByteBuffer buffer, char separator) {
+		assert separator < 0x80;
+		_buffer = buffer;
+		_position = buffer.position();
+		_separator = (byte) separator;
+		_isEndOfInput = true;
+	}
+
+	/**
+	 * Moves onto the next line, splitting it into fields
+	 *
+	 * @return If there was another line
+	 * @throws IOException
+	 *             If unable to read from the channel
+	 */
+	public boolean nextLine() throws IOException {
+		// Find the end of the line, reading more if we need to
+		int lineEnd = _position;
+		while (true) {
+			if (_skipLineFeed && _position < _buffer.limit()) {
+				_skipLineFeed = false;
+				if (_buffer.get(_position) == '\n') {
+					_position++;
+					lineEnd++;
+				}
+			}
+
+			while (lineEnd < _buffer.limit()) {
+				byte b = _buffer.get(lineEnd);
+				if (b == '\n' || b == '\r') {
+					break;
+				}
+				lineEnd++;
+			}
+
+			if (lineEnd < _buffer.limit() || _isEndOfInput) {
+				break;
+			}
+
+			lineEnd -= _position;
+			fill();
+			lineEnd += _position;
+		}
+
+		// If we're at the end, there are no more lines
+		// Note: Like `readLine`, a line terminator at the end doesn't start another line
+		if (lineEnd == _position && lineEnd == _buffer.limit()) {
+			return false;
+		}
+
+		splitFields(_position, lineEnd);
+		if (lineEnd < _buffer.limit()) {
+			_skipLineFeed = _buffer.get(lineEnd) == '\r';
+			_position = lineEnd + 1;
+		} else {
+			_position = lineEnd;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if the next line was already read, so that moving onto it won't wait on the channel
+	 *
+	 * @return If the next line was already read, or there are no more lines
+	 */
+	public boolean isNextLineRead() {
+		int lineStart = _position;
+		if (_skipLineFeed && lineStart < _buffer.limit() && _buffer.get(lineStart) == '\n') {
+			lineStart++;
+		}
+
+		for (int idx = lineStart; idx < _buffer.limit(); idx++) {
+			byte b = _buffer.get(idx);
+			if (b == '\n' || b == '\r') {
+				return true;
+			}
+		}
+
+		return _isEndOfInput;
+	}
+
+	/**
+	 * Reads more from the channel, keeping everything after `_position`
+	 *
+	 * @throws IOException
+	 *             If unable to read from the channel
+	 */
+	private void fill() throws IOException {
+		// Move everything unread to the start, growing the buffer if it's all unread
+		int remaining = _buffer.limit() - _position;
+		if (remaining == _buffer.capacity()) {
+			var buffer = ByteBuffer.allocate(_buffer.capacity() * 2);
+			buffer.put(_buffer.position(_position));
+			_buffer = buffer;
+		} else {
+			_buffer.position(_position).compact();
+		}
+		_position = 0;
+
+		// Then read as much as fits
+		// Note: Channels may read less than requested, but only read nothing at the end
+		int read = _channel.read(_buffer);
+		_buffer.flip();
+		_isEndOfInput = read == -1;
+	}
+
+	/**
+	 * Splits a line into fields
+	 *
+	 * @param lineStart
+	 *            The start of the line
+	 * @param lineEnd
+	 *            The end of the line
+	 */
+	private void splitFields(int lineStart, int lineEnd) {
+		_fieldCount = 0;
+		addFields(lineStart, lineEnd, _separator);
+	}
+
+	/**
+	 * Splits a field of the current line into sub-fields, as `String.split` would
+	 *
+	 * The sub-fields are added after all fields, so they're retrieved like any other field of the line.
+	 *
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @param separator
+	 *            The separator between sub-fields, an ASCII character
+	 * @return The index of the first sub-field, all others following it up to the number of fields
+	 */
+	public int splitField(int fieldIdx, char separator) {
+		assert separator < 0x80;
+		int firstIdx = _fieldCount;
+		addFields(_fieldStarts[fieldIdx], _fieldEnds[fieldIdx], (byte) separator);
+		return firstIdx;
+	}
+
+	/**
+	 * Adds all fields of a range of the buffer to the current line
+	 *
+	 * @param start
+	 *            The start of the range
+	 * @param end
+	 *            The end of the range
+	 * @param separator
+	 *            The separator between fields
+	 */
+	private void addFields(int start, int end, byte separator) {
+		int firstIdx = _fieldCount;
+		int fieldStart = start;
+		for (int idx = start; idx < end; idx++) {
+			if (_buffer.get(idx) == separator) {
+				addField(fieldStart, idx);
+				fieldStart = idx + 1;
+			}
+		}
+		addField(fieldStart, end);
+
+		// Note: Like `String.split`, drop all trailing empty fields, unless there's no separator
+		if (_fieldCount - firstIdx > 1) {
+			while (_fieldCount > firstIdx && _fieldStarts[_fieldCount - 1] == _fieldEnds[_fieldCount - 1]) {
+				_fieldCount--;
+			}
+		}
+	}
+
+	/**
+	 * Adds a field to the current line
+	 *
+	 * @param start
+	 *            The start of the field
+	 * @param end
+	 *            The end of the field
+	 */
+	private void addField(int start, int end) {
+		if (_fieldCount == _fieldStarts.length) {
+			_fieldStarts = Arrays.copyOf(_fieldStarts, _fieldCount * 2);
+			_fieldEnds = Arrays.copyOf(_fieldEnds, _fieldCount * 2);
+		}
+
+		_fieldStarts[_fieldCount] = start;
+		_fieldEnds[_fieldCount] = end;
+		_fieldCount++;
+	}
+
+	/**
+	 * Retrieves the number of fields of the current line
+	 *
+	 * @return The number of fields
+	 */
+	public int getFieldCount() {
+		return _fieldCount;
+	}
+
+	/**
+	 * Checks if a field is equal to an ASCII string
+	 *
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @param value
+	 *            The string to compare to
+	 * @return If the field is equal to the string
+	 */
+	public boolean fieldEquals(int fieldIdx, String value) {
+		int start = _fieldStarts[fieldIdx];
+		if (_fieldEnds[fieldIdx] - start != value.length()) {
+			return false;
+		}
+
+		for (int idx = 0; idx < value.length(); idx++) {
+			if (_buffer.get(start + idx) != value.charAt(idx)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Retrieves a field
+	 *
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The field
+	 */
+	public String getField(int fieldIdx) {
+		int start = _fieldStarts[fieldIdx];
+		int length = _fieldEnds[fieldIdx] - start;
+		if (_buffer.hasArray()) {
+			return new String(_buffer.array(), _buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+		}
+
+		if (_scratch.length < length) {
+			_scratch = new byte[Math.max(length, _scratch.length * 2)];
+		}
+		_buffer.get(start, _scratch, 0, length);
+		return new String(_scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Retrieves a field that's likely repeated over many lines, such as an id
+	 *
+	 * Equal fields are only decoded the first time they're retrieved, the same string being returned afterwards.
+	 *
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The field
+	 */
+	public String getSymbol(int fieldIdx) {
+		int start = _fieldStarts[fieldIdx];
+		int end = _fieldEnds[fieldIdx];
+		int hash = 0;
+		for (int idx = start; idx < end; idx++) {
+			hash = 31 * hash + _buffer.get(idx);
+		}
+
+		// Find the symbol, or an empty slot for it
+		int mask = _symbols.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (_symbols[slot] != null) {
+			if (symbolEquals(_symbolBytes[slot], start, end)) {
+				return _symbols[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// If we have too many symbols, don't keep any more
+		var symbol = getField(fieldIdx);
+		if (_symbolCount == MAX_SYMBOLS) {
+			return symbol;
+		}
+
+		var bytes = new byte[end - start];
+		_buffer.get(start, bytes);
+		_symbolBytes[slot] = bytes;
+		_symbols[slot] = symbol;
+		_symbolCount++;
+
+		// Note: We keep the table at most half full, so slots are found quickly
+		if (_symbolCount * 2 > _symbols.length) {
+			growSymbols();
+		}
+
+		return symbol;
+	}
+
+	/**
+	 * Checks if a symbol is equal to a range of the buffer
+	 *
+	 * @param bytes
+	 *            The bytes of the symbol
+	 * @param start
+	 *            The start of the range
+	 * @param end
+	 *            The end of the range
+	 * @return If they're equal
+	 */
+	private boolean symbolEquals(byte[] bytes, int start, int end) {
+		if (bytes.length != end - start) {
+			return false;
+		}
+
+		for (int idx = 0; idx < bytes.length; idx++) {
+			if (bytes[idx] != _buffer.get(start + idx)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** Doubles the size of the symbol table */
+	private void growSymbols() {
+		var symbolBytes = _symbolBytes;
+		var symbols = _symbols;
+		_symbolBytes = new byte[symbols.length * 2][];
+		_symbols = new String[symbols.length * 2];
+
+		int mask = _symbols.length - 1;
+		for (int oldSlot = 0; oldSlot < symbols.length; oldSlot++) {
+			if (symbols[oldSlot] == null) {
+				continue;
+			}
+
+			int hash = 0;
+			for (var b : symbolBytes[oldSlot]) {
+				hash = 31 * hash + b;
+			}
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (_symbols[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			_symbolBytes[slot] = symbolBytes[oldSlot];
+			_symbols[slot] = symbols[oldSlot];
+		}
+	}
+
+	/**
+	 * Parses a field as an integer, as `Integer.parseInt` would
+	 *
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The integer
+	 * @throws NumberFormatException
+	 *             If the field isn't an integer
+	 */
+	public int getIntField(int fieldIdx) throws NumberFormatException {
+		int start = _fieldStarts[fieldIdx];
+		int end = _fieldEnds[fieldIdx];
+
+		// Parse an optional sign and up to 9 digits, which can't overflow
+		boolean isNegative = start < end && _buffer.get(start) == '-';
+		int idx = start < end && (isNegative || _buffer.get(start) == '+') ? start + 1 : start;
+		if (idx == end || end - idx > 9) {
+			return Integer.parseInt(getField(fieldIdx));
+		}
+
+		int value = 0;
+		for (; idx < end; idx++) {
+			int digit = _buffer.get(idx) - '0';
+			if (digit < 0 || digit > 9) {
+				// Note: Let `Integer.parseInt` deal with anything else, to report it the same way
+				return Integer.parseInt(getField(fieldIdx));
+			}
+			value = value * 10 + digit;
+		}
+
+		return isNegative ? -value : value;
+	}
+
+	/**
+	 * Parses a field as a double, as `Double.parseDouble` would
+	 *
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The double
+	 * @throws NumberFormatException
+	 *             If the field isn't a double
+	 */
+	public double getDoubleField(int fieldIdx) throws NumberFormatException {
+		int start = _fieldStarts[fieldIdx];
+		int end = _fieldEnds[fieldIdx];
+
+		// Parse an optional sign, digits and an optional fraction
+		// Note: With few enough digits, the mantissa and power of ten are both exact, so dividing
+		//       them is correctly rounded, just like `Double.parseDouble`.
+		boolean isNegative = start < end && _buffer.get(start) == '-';
+		int idx = start < end && (isNegative || _buffer.get(start) == '+') ? start + 1 : start;
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; idx < end; idx++) {
+			byte b = _buffer.get(idx);
+			if (b == '.' && fractionDigits == -1) {
+				fractionDigits = 0;
+				continue;
+			}
+
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || digits == MAX_DOUBLE_DIGITS) {
+				return Double.parseDouble(getField(fieldIdx));
+			}
+			mantissa = mantissa * 10 + digit;
+			digits++;
+			if (fractionDigits != -1) {
+				fractionDigits++;
+			}
+		}
+
+		// Note: Let `Double.parseDouble` deal with anything else, such as `5.` or `.5`
+		if (digits == 0 || fractionDigits == 0 || digits == fractionDigits) {
+			return Double.parseDouble(getField(fieldIdx));
+		}
+
+		double value = fractionDigits == -1 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+		return isNegative ? -value : value;
+	}
+}
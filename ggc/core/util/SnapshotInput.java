@@ -0,0 +1,186 @@
+package ggc.core.util;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of length-prefixed binary records written by {@link SnapshotOutput}.
+ * 
+ * Reads from a buffer, usually a memory-mapped file, or from data split into blocks, each only retrieved once first
+ * read. Values may only be read from the current record, and reading past it's end is reported as an `IOException`.
+ */
+public class SnapshotInput {
+	/** The data of all records */
+	private BlockBuffer _data;
+
+	/** Position of the first record in the data */
+	private long _start;
+
+	/** Position after the last record in the data */
+	private long _limit;
+
+	/** Position of the next record in the data */
+	private long _position;
+
+	/** The current record */
+	private ByteBuffer _record = ByteBuffer.allocate(0);
+
+	public SnapshotInput(ByteBuffer buffer) {
+		this(BlockBuffer.wrap(buffer));
+	}
+
+	public SnapshotInput(BlockBuffer data) {
+		this(data, 0, data.size());
+	}
+
+	private SnapshotInput(BlockBuffer data, long start, long limit) {
+		_data = data;
+		_start = start;
+		_limit = limit;
+		_position = start;
+	}
+
+	/** Returns if there are any more records */
+	public boolean hasRecord() {
+		return _position < _limit;
+	}
+
+	/** Returns the position of the next record, from the first one */
+	public long position() {
+		return _position - _start;
+	}
+
+	/** Moves onto the next record */
+	public void nextRecord() throws IOException {
+		if (_limit - _position < Integer.BYTES) {
+			throw new IOException("Corrupt snapshot: Unexpected end of file");
+		}
+
+		int length = _data.getInt(_position);
+		if (length < 0 || length > _limit - _position - Integer.BYTES) {
+			throw new IOException("Corrupt snapshot: Bad record length " + length);
+		}
+
+		_record = _data.slice(_position + Integer.BYTES, length);
+		_position += Integer.BYTES + length;
+	}
+
+	/** Returns the next `length` bytes, after the current record, as an input of their own, and skips over them */
+	public SnapshotInput slice(long length) throws IOException {
+		if (length < 0 || length > _limit - _position) {
+			throw new IOException("Corrupt snapshot: Bad length " + length);
+		}
+
+		var slice = new SnapshotInput(_data, _position, _position + length);
+		_position += length;
+		return slice;
+	}
+
+	/** Returns an input over the same records, from the same position, to read independently of this one */
+	public SnapshotInput duplicate() {
+		var duplicate = new SnapshotInput(_data, _start, _limit);
+		duplicate._position = _position;
+		return duplicate;
+	}
+
+	/** Moves onto `position`, from the first record, so the next record is the one at it */
+	public void seek(long position) throws IOException {
+		if (position < 0 || position > _limit - _start) {
+			throw new IOException("Corrupt snapshot: Bad record position " + position);
+		}
+
+		_position = _start + position;
+	}
+
+	/** Moves onto the record at `position`, from the first record, continuing from it afterwards */
+	public void seekRecord(long position) throws IOException {
+		seek(position);
+		nextRecord();
+	}
+
+	/** Skips `count` records */
+	public void skipRecords(int count) throws IOException {
+		for (int recordIdx = 0; recordIdx < count; recordIdx++) {
+			nextRecord();
+		}
+	}
+
+	/** Reads a byte from the current record */
+	public int readByte() throws IOException {
+		try {
+			return _record.get();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt snapshot: Record too short", e);
+		}
+	}
+
+	/** Reads a boolean from the current record */
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	/** Reads an integer from the current record */
+	public int readInt() throws IOException {
+		try {
+			return _record.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt snapshot: Record too short", e);
+		}
+	}
+
+	/** Reads a long from the current record */
+	public long readLong() throws IOException {
+		try {
+			return _record.getLong();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt snapshot: Record too short", e);
+		}
+	}
+
+	/** Reads a double from the current record */
+	public double readDouble() throws IOException {
+		try {
+			return _record.getDouble();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt snapshot: Record too short", e);
+		}
+	}
+
+	/** Reads `count` integers from the current record, as a view over the record, without copying them */
+	public IntBuffer readIntView(int count) throws IOException {
+		if (count < 0 || count > _record.remaining() / Integer.BYTES) {
+			throw new IOException("Corrupt snapshot: Bad integer count " + count);
+		}
+
+		var view = _record.slice(_record.position(), count * Integer.BYTES).asIntBuffer();
+		_record.position(_record.position() + count * Integer.BYTES);
+		return view;
+	}
+
+	/** Reads bytes from the current record */
+	public byte[] readBytes() throws IOException {
+		int length = readInt();
+		if (length < 0 || length > _record.remaining()) {
+			throw new IOException("Corrupt snapshot: Bad bytes length " + length);
+		}
+
+		var bytes = new byte[length];
+		_record.get(bytes);
+		return bytes;
+	}
+
+	/** Reads a string from the current record */
+	public String readString() throws IOException {
+		int length = readInt();
+		if (length < 0 || length > _record.remaining()) {
+			throw new IOException("Corrupt snapshot: Bad string length " + length);
+		}
+
+		var bytes = new byte[length];
+		_record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
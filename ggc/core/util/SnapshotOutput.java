@@ -0,0 +1,143 @@
+package ggc.core.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered writer of length-prefixed binary records onto a channel.
+ * 
+ * Values are written onto the current record, which is only written to the channel, prefixed by it's length, once
+ * it's ended.
+ */
+public class SnapshotOutput implements Closeable {
+	/** Size of the channel buffer */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The channel we're writing to */
+	private WritableByteChannel _channel;
+
+	/** Buffer of all records not yet written to the channel */
+	private ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/** The current record */
+	private ByteBuffer _record = ByteBuffer.allocate(256);
+
+	/** Number of bytes of all records ended so far */
+	private long _size;
+
+	public SnapshotOutput(WritableByteChannel channel) {
+		_channel = channel;
+	}
+
+	/** Ensures the current record has space for `size` more bytes */
+	private ByteBuffer reserve(int size) {
+		if (_record.remaining() < size) {
+			var record = ByteBuffer.allocate(Math.max(_record.capacity() * 2, _record.position() + size));
+			_record.flip();
+			record.put(_record);
+			_record = record;
+		}
+
+		return _record;
+	}
+
+	/** Writes a byte onto the current record */
+	public void writeByte(int value) {
+		reserve(Byte.BYTES).put((byte) value);
+	}
+
+	/** Writes a boolean onto the current record */
+	public void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+
+	/** Writes an integer onto the current record */
+	public void writeInt(int value) {
+		reserve(Integer.BYTES).putInt(value);
+	}
+
+	/** Writes a long onto the current record */
+	public void writeLong(long value) {
+		reserve(Long.BYTES).putLong(value);
+	}
+
+	/** Writes a double onto the current record */
+	public void writeDouble(double value) {
+		reserve(Double.BYTES).putDouble(value);
+	}
+
+	/** Writes a string onto the current record, as it's length in bytes followed by it's UTF-8 bytes */
+	public void writeString(String value) {
+		var bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		reserve(bytes.length).put(bytes);
+	}
+
+	/** Writes bytes onto the current record, as their length followed by the bytes */
+	public void writeBytes(byte[] value) {
+		writeInt(value.length);
+		reserve(value.length).put(value);
+	}
+
+	/** Returns the number of bytes of all records ended so far, including those not yet written to the channel */
+	public long size() {
+		return _size;
+	}
+
+	/** Ends the current record, writing it prefixed by it's length */
+	public void endRecord() throws IOException {
+		_record.flip();
+		_size += Integer.BYTES + _record.remaining();
+		if (_buffer.remaining() < Integer.BYTES + _record.remaining()) {
+			flush();
+		}
+
+		_buffer.putInt(_record.remaining());
+
+		// Note: If the record doesn't fit in the buffer, we write it directly
+		if (_buffer.remaining() < _record.remaining()) {
+			flush();
+			writeFully(_record);
+		} else {
+			_buffer.put(_record);
+		}
+
+		_record.clear();
+	}
+
+	/** Writes records already encoded by another output, after all records ended so far */
+	public void writeRecords(ByteBuffer records) throws IOException {
+		assert _record.position() == 0 : "Unfinished record";
+		flush();
+		_size += records.remaining();
+		writeFully(records.duplicate());
+	}
+
+	/** Writes all buffered records to the channel */
+	public void flush() throws IOException {
+		_buffer.flip();
+		writeFully(_buffer);
+		_buffer.clear();
+	}
+
+	/** Writes all of `buffer` to the channel */
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			_channel.write(buffer);
+		}
+	}
+
+	/** Flushes all records and closes the channel */
+	@Override
+	public void close() throws IOException {
+		assert _record.position() == 0 : "Unfinished record";
+		try {
+			flush();
+		} finally {
+			_channel.close();
+		}
+	}
+}
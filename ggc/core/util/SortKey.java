@@ -0,0 +1,63 @@
+package ggc.core.util;
+
+import java.text.Collator;
+import java.util.Arrays;
+
+/**
+ * Key of a string, ordered as the string is by a collator.
+ * 
+ * Unlike a `CollationKey`, it's only it's bytes, so it may be saved and restored without the collator.
+ */
+public final class SortKey implements Comparable<SortKey> {
+	/** Bytes of the key */
+	// Note: `final` so keys may be shared between threads without synchronization
+	private final byte[] _bytes;
+
+	/**
+	 * Restores a key from it's bytes
+	 * 
+	 * @param bytes
+	 *            The bytes of the key, as retrieved by `toByteArray`
+	 */
+	public SortKey(byte[] bytes) {
+		_bytes = bytes;
+	}
+
+	/**
+	 * Creates the key of a string
+	 * 
+	 * @param collator
+	 *            The collator to order by
+	 * @param source
+	 *            The string
+	 * @return The key of the string
+	 */
+	// Note: The bytes of a `CollationKey` compare, as unsigned bytes, just like the key does
+	public static SortKey of(Collator collator, String source) {
+		return new SortKey(collator.getCollationKey(source).toByteArray());
+	}
+
+	/**
+	 * Retrieves the bytes of this key
+	 * 
+	 * @return The bytes of this key
+	 */
+	public byte[] toByteArray() {
+		return _bytes;
+	}
+
+	@Override
+	public int compareTo(SortKey other) {
+		return Arrays.compareUnsigned(_bytes, other._bytes);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof SortKey && Arrays.equals(_bytes, ((SortKey) other)._bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(_bytes);
+	}
+}
@@ -1,14 +1,23 @@
 package ggc.core.util;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
@@ -17,46 +26,113 @@ import java.util.stream.Collector;
 import java.util.stream.Stream;
 import static ggc.core.util.StreamIterator.streamIt;
 
-/** A map from a key `K` to a list of sorted values `V`. */
+/** A map from a key `K` to a collection of sorted values `V`. */
 public class SortedMultiMap<K, V> {
-	/** The underlying implementation as a map of sorted lists */
-	// Note: Can't be a set, as we can have multiple equal keys
-	private Map<K, List<V>> _map = new HashMap<>();
+	/** A value along with when it was inserted, so that equal values stay in insertion order */
+	private static class Node<V> {
+		/** The value */
+		private V _value;
+
+		/** Insertion order of the value */
+		private long _order;
+
+		public Node(V value, long order) {
+			_value = value;
+			_order = order;
+		}
+	}
+
+	/** The underlying implementation as a map of sorted sets */
+	// Note: Each set is a balanced tree, so values may be inserted and removed
+	//       anywhere in logarithmic time.
+	// Note: Concurrent, so the set of a key may be retrieved while the sets of other keys are added or removed
+	private Map<K, NavigableSet<Node<V>>> _map = new ConcurrentHashMap<>();
+
+	/** The node of each value, to find them when removing */
+	private Map<V, Node<V>> _nodes = new IdentityHashMap<>();
+
+	/** Comparator for nodes, by value then by insertion order */
+	private Comparator<Node<V>> _nodeComparator;
 
 	/** Comparator */
 	private Comparator<? super V> _comparator;
 
+	/** Insertion order of the next value */
+	private long _nextOrder;
+
 	public SortedMultiMap(Comparator<? super V> comparator) {
 		_comparator = comparator;
+		_nodeComparator = Comparator.<Node<V>, V>comparing(node -> node._value, comparator)
+				.thenComparingLong(node -> node._order);
 	}
 
 	/** Inserts a new value into the map */
 	public void put(K key, V value) {
-		// Get the list, or create it
-		var list = _map.computeIfAbsent(key, _key -> new ArrayList<>());
-
-		// Then find the right position to add this value at
-		// Note: The return value is negative if it wasn't found, but it
-		//       contains the correct index to insert it at (-1) such that the
-		//       list remains sorted.
-		var insertionIdx = Collections.binarySearch(list, value, _comparator);
-		list.add(insertionIdx >= 0 ? insertionIdx : -(insertionIdx + 1), value);
+		// Get the set, or create it
+		var set = _map.computeIfAbsent(key, _key -> new TreeSet<>(_nodeComparator));
+
+		// Then add the value after all values equal to it
+		var node = new Node<>(value, _nextOrder++);
+		set.add(node);
+		_nodes.put(value, node);
+	}
+
+	/** Inserts many values into the map, as if inserted in order one at a time */
+	public void putAll(K key, Collection<V> values) {
+		if (values.isEmpty()) {
+			return;
+		}
+
+		// Create all nodes in insertion order, then sort them all at once
+		var nodes = new ArrayList<Node<V>>(values.size());
+		for (var value : values) {
+			var node = new Node<>(value, _nextOrder++);
+			nodes.add(node);
+			_nodes.put(value, node);
+		}
+		nodes.sort(_nodeComparator);
+
+		// Then build the set straight from the sorted nodes, or merge them into the existing set
+		// Note: `TreeSet` builds itself in linear time when given a sorted set with the same comparator.
+		var set = _map.get(key);
+		if (set == null) {
+			var sortedNodes = Collections.unmodifiableSortedSet(new SortedNodes<>(nodes, _nodeComparator));
+			_map.put(key, new TreeSet<>(sortedNodes));
+		} else {
+			set.addAll(nodes);
+		}
+	}
+
+	/** Removes a value from the map, returning if it existed */
+	public boolean remove(K key, V value) {
+		var set = _map.get(key);
+		var node = _nodes.get(value);
+		if (set == null || node == null || !set.remove(node)) {
+			return false;
+		}
+
+		_nodes.remove(value);
+		if (set.isEmpty()) {
+			_map.remove(key);
+		}
+
+		return true;
 	}
 
-	/** Retrieves all values associated with a key */
-	public Optional<List<V>> get(K key) {
-		return Optional.ofNullable(_map.get(key));
+	/** Retrieves all values associated with a key, in order */
+	public Optional<Collection<V>> get(K key) {
+		return Optional.ofNullable(_map.get(key)).map(ValuesView::new);
 	}
 
 	/** Returns a stream over all keys and values in this map */
 	public Stream<Pair<K, V>> keyValuesStream() {
-		return _map.entrySet().stream().flatMap(
-				keyValues -> keyValues.getValue().stream().map(value -> new Pair<>(keyValues.getKey(), value)));
+		return _map.entrySet().stream().flatMap(keyValues -> keyValues.getValue().stream()
+				.map(node -> new Pair<>(keyValues.getKey(), node._value)));
 	}
 
 	/** Returns a stream over all values in this map */
 	public Stream<V> valuesStream() {
-		return _map.values().stream().flatMap(values -> values.stream());
+		return _map.values().stream().flatMap(nodes -> nodes.stream().map(node -> node._value));
 	}
 
 	/** Returns a collector for this map */
@@ -64,6 +140,120 @@ public class SortedMultiMap<K, V> {
 		return new CollectorImpl<>(comparator);
 	}
 
+	/** Read-only view over the values of a set of nodes */
+	private static class ValuesView<V> extends AbstractCollection<V> {
+		/** The nodes */
+		private Collection<Node<V>> _nodes;
+
+		public ValuesView(Collection<Node<V>> nodes) {
+			_nodes = nodes;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			var nodes = _nodes.iterator();
+			return new Iterator<>() {
+				@Override
+				public boolean hasNext() {
+					return nodes.hasNext();
+				}
+
+				@Override
+				public V next() {
+					return nodes.next()._value;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return _nodes.size();
+		}
+	}
+
+	/** Read-only sorted set over an already sorted list of nodes, to build sets from */
+	private static class SortedNodes<V> extends AbstractSet<Node<V>> implements SortedSet<Node<V>> {
+		/** The nodes, in order */
+		private List<Node<V>> _nodes;
+
+		/** Comparator the nodes are sorted by */
+		private Comparator<Node<V>> _comparator;
+
+		public SortedNodes(List<Node<V>> nodes, Comparator<Node<V>> comparator) {
+			_nodes = nodes;
+			_comparator = comparator;
+		}
+
+		@Override
+		public Comparator<? super Node<V>> comparator() {
+			return _comparator;
+		}
+
+		@Override
+		public Iterator<Node<V>> iterator() {
+			return Collections.unmodifiableList(_nodes).iterator();
+		}
+
+		@Override
+		public int size() {
+			return _nodes.size();
+		}
+
+		@Override
+		public Node<V> first() {
+			if (_nodes.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return _nodes.get(0);
+		}
+
+		@Override
+		public Node<V> last() {
+			if (_nodes.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return _nodes.get(_nodes.size() - 1);
+		}
+
+		@Override
+		public boolean contains(Object value) {
+			@SuppressWarnings("unchecked") // Only nodes are ever looked up, and any other value fails the comparator
+			var node = (Node<V>) value;
+			return Collections.binarySearch(_nodes, node, _comparator) >= 0;
+		}
+
+		@Override
+		public SortedSet<Node<V>> subSet(Node<V> fromElement, Node<V> toElement) {
+			if (_comparator.compare(fromElement, toElement) > 0) {
+				throw new IllegalArgumentException("Start of range after it's end");
+			}
+
+			return new SortedNodes<>(_nodes.subList(indexOf(fromElement), indexOf(toElement)), _comparator);
+		}
+
+		@Override
+		public SortedSet<Node<V>> headSet(Node<V> toElement) {
+			return new SortedNodes<>(_nodes.subList(0, indexOf(toElement)), _comparator);
+		}
+
+		@Override
+		public SortedSet<Node<V>> tailSet(Node<V> fromElement) {
+			return new SortedNodes<>(_nodes.subList(indexOf(fromElement), _nodes.size()), _comparator);
+		}
+
+		/**
+		 * Retrieves the index of the first node that isn't before a node
+		 * 
+		 * @param node
+		 *            The node
+		 * @return The index of the node, if it's in this set, else of where it would be inserted
+		 */
+		private int indexOf(Node<V> node) {
+			int idx = Collections.binarySearch(_nodes, node, _comparator);
+			return idx >= 0 ? idx : -idx - 1;
+		}
+	}
+
 	/** Collector for `collector` */
 	private static class CollectorImpl<K, V>
 			implements Collector<Pair<K, V>, SortedMultiMap<K, V>, SortedMultiMap<K, V>> {
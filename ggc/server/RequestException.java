@@ -0,0 +1,18 @@
+package ggc.server;
+
+/** Exception thrown when a request can't be answered, answered with an error instead */
+// Note: Package private because we don't need it outside of the server
+class RequestException extends Exception {
+	/** Serial number for serialization. */
+	private static final long serialVersionUID = 2026_10_17_20_00L;
+
+	/**
+	 * Creates the exception
+	 *
+	 * @param message
+	 *            The message answered to the client
+	 */
+	RequestException(String message) {
+		super(message);
+	}
+}
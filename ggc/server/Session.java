@@ -0,0 +1,427 @@
+package ggc.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import ggc.core.Partner;
+import ggc.core.Product;
+import ggc.core.WarehouseManager;
+import ggc.core.exception.InsufficientProductsException;
+import ggc.core.exception.PartnerAlreadyExistsException;
+import ggc.core.exception.ProductAlreadyExistsException;
+import ggc.core.util.LineTokenizer;
+
+/**
+ * Session of a client connected to the server.
+ *
+ * Each request is a line of fields separated by `|`, like the entries of an import file, the first being the
+ * operation, such as `SALE|P1|PR1|3|10`. Each response is a line with `OK|<count>`, followed by `count` lines, or a
+ * line with `ERROR|<message>`. The operations, and the lines they respond with, are:
+ * <ul>
+ * <li>`DATE`: The current date</li>
+ * <li>`ADVANCE_DATE|<days>`: Nothing</li>
+ * <li>`BALANCE`: The available and accounting balances, as `<available>|<accounting>`</li>
+ * <li>`PARTNERS`: All partners</li>
+ * <li>`PARTNER|<partner>`: The partner, followed by all of it's pending notifications, which are cleared</li>
+ * <li>`REGISTER_PARTNER|<partner>|<name>|<address>`: Nothing</li>
+ * <li>`TOGGLE_NOTIFICATIONS|<partner>|<product>`: Nothing</li>
+ * <li>`PRODUCTS`: All products</li>
+ * <li>`BATCHES`: All batches</li>
+ * <li>`BATCHES_UNDER_PRICE|<price>`: All batches under the price</li>
+ * <li>`TRANSACTION|<id>`: The transaction</li>
+ * <li>`PURCHASE|<partner>|<product>|<quantity>|<unit price>`: The purchase</li>
+ * <li>`SALE|<partner>|<product>|<quantity>|<deadline>`: Nothing</li>
+ * <li>`BREAKDOWN|<partner>|<product>|<quantity>`: Nothing</li>
+ * <li>`PAY|<id>`: Nothing</li>
+ * <li>`SAVE[|<file>]`: Nothing, once saved to the associated file, or to `file` if none is associated</li>
+ * <li>`LOAD|<file>`: Nothing</li>
+ * </ul>
+ * Everything is formatted just as it's displayed by the application. Requests are answered in order, and responses
+ * are only sent once all requests already received are answered, so clients may send many requests without waiting for
+ * each response.
+ */
+// Note: Package private because we don't need it outside of the server
+class Session implements Runnable {
+	/** The warehouse manager the client drives */
+	private WarehouseManager _manager;
+
+	/** The channel to the client */
+	private SocketChannel _channel;
+
+	/**
+	 * Creates a session
+	 *
+	 * @param manager
+	 *            The warehouse manager the client drives
+	 * @param channel
+	 *            The channel to the client
+	 */
+	Session(WarehouseManager manager, SocketChannel channel) {
+		_manager = manager;
+		_channel = channel;
+	}
+
+	@Override
+	public void run() {
+		try (var channel = _channel) {
+			var requests = new LineTokenizer(channel, '|');
+			var responses = Channels.newWriter(channel, StandardCharsets.UTF_8);
+			while (requests.nextLine()) {
+				respond(requests, responses);
+
+				// Note: If the client already sent more requests, their responses are sent along with this one
+				if (!requests.isNextLineRead()) {
+					responses.flush();
+				}
+			}
+			responses.flush();
+		} catch (IOException e) {
+			// Note: The client disconnected, so there's no one left to respond to
+		}
+	}
+
+	/**
+	 * Responds to a request
+	 *
+	 * @param request
+	 *            The request
+	 * @param responses
+	 *            The writer to respond to
+	 * @throws IOException
+	 *             If unable to respond
+	 */
+	private void respond(LineTokenizer request, Writer responses) throws IOException {
+		List<String> lines;
+		try {
+			lines = handle(request);
+		} catch (RequestException e) {
+			respondError(responses, e.getMessage());
+			return;
+		} catch (RuntimeException e) {
+			// Note: Only this request failed, so the client is told and the session keeps going
+			respondError(responses, "Internal error: " + e);
+			return;
+		}
+
+		responses.write("OK|" + lines.size() + "\n");
+		for (var line : lines) {
+			responses.write(line);
+			responses.write('\n');
+		}
+	}
+
+	/**
+	 * Responds to a request with an error
+	 *
+	 * @param responses
+	 *            The writer to respond to
+	 * @param message
+	 *            The message of the error
+	 * @throws IOException
+	 *             If unable to respond
+	 */
+	private static void respondError(Writer responses, String message) throws IOException {
+		// Note: The message must stay on a single line
+		responses.write("ERROR|" + message.replace('\n', ' ').replace('\r', ' ') + "\n");
+	}
+
+	/**
+	 * Handles a request
+	 *
+	 * @param request
+	 *            The request
+	 * @return The lines to respond with
+	 * @throws RequestException
+	 *             If unable to handle the request
+	 */
+	private List<String> handle(LineTokenizer request) throws RequestException {
+		if (request.getFieldCount() == 0) {
+			throw new RequestException("Empty request");
+		}
+
+		var operation = request.getSymbol(0);
+		switch (operation) {
+		case "DATE":
+			expectFields(request, 1);
+			return List.of(Integer.toString(_manager.getDate()));
+
+		case "ADVANCE_DATE": {
+			expectFields(request, 2);
+			int days = positiveIntField(request, 1);
+			_manager.advanceDate(days);
+			return List.of();
+		}
+
+		case "BALANCE": {
+			expectFields(request, 1);
+			var balances = _manager.getBalances();
+			return List.of(Math.round(balances.getLhs()) + "|" + Math.round(balances.getRhs()));
+		}
+
+		case "PARTNERS":
+			expectFields(request, 1);
+			return _manager.getPartners().map(_manager::format).collect(Collectors.toList());
+
+		case "PARTNER": {
+			expectFields(request, 2);
+			var partner = partnerField(request, 1);
+			var lines = new ArrayList<String>();
+			lines.add(_manager.format(partner));
+			for (var notification : _manager.clearPendingPartnerNotifications(partner)) {
+				lines.add(_manager.format(notification));
+			}
+			return lines;
+		}
+
+		case "REGISTER_PARTNER":
+			expectFields(request, 4);
+			try {
+				_manager.registerPartner(request.getSymbol(1), request.getField(2), request.getField(3));
+			} catch (PartnerAlreadyExistsException e) {
+				throw new RequestException(e.getMessage());
+			}
+			return List.of();
+
+		case "TOGGLE_NOTIFICATIONS":
+			expectFields(request, 3);
+			_manager.togglePartnerNotifications(partnerField(request, 1), productField(request, 2));
+			return List.of();
+
+		case "PRODUCTS":
+			expectFields(request, 1);
+			return _manager.getProducts().map(_manager::format).collect(Collectors.toList());
+
+		case "BATCHES":
+			expectFields(request, 1);
+			return _manager.getBatches().sorted(_manager.batchComparator()).map(_manager::format)
+					.collect(Collectors.toList());
+
+		case "BATCHES_UNDER_PRICE": {
+			expectFields(request, 2);
+			double price = doubleField(request, 1);
+			return _manager.getBatchesUnderPrice(price).sorted(_manager.batchComparator()).map(_manager::format)
+					.collect(Collectors.toList());
+		}
+
+		case "TRANSACTION": {
+			expectFields(request, 2);
+			int id = intField(request, 1);
+			var transaction = _manager.getTransaction(id)
+					.orElseThrow(() -> new RequestException("Unknown transaction id: " + id));
+			return List.of(_manager.format(transaction));
+		}
+
+		case "PURCHASE": {
+			expectFields(request, 5);
+			var partner = partnerField(request, 1);
+			var productId = request.getSymbol(2);
+			int quantity = positiveIntField(request, 3);
+			double unitPrice = doubleField(request, 4);
+			if (unitPrice < 0.0) {
+				throw new RequestException("Negative unit price: " + unitPrice);
+			}
+
+			// Note: Like the application, products that don't exist yet are registered
+			var product = _manager.getProduct(productId).or(() -> registerProduct(productId)).get();
+			var purchase = _manager.registerPurchase(partner, product, quantity, unitPrice);
+			return List.of(_manager.format(purchase));
+		}
+
+		case "SALE":
+			expectFields(request, 5);
+			try {
+				_manager.registerSale(partnerField(request, 1), productField(request, 2),
+						positiveIntField(request, 3), intField(request, 4));
+			} catch (InsufficientProductsException e) {
+				throw insufficientProducts(e);
+			}
+			return List.of();
+
+		case "BREAKDOWN":
+			expectFields(request, 4);
+			try {
+				_manager.registerBreakdown(partnerField(request, 1), productField(request, 2),
+						positiveIntField(request, 3));
+			} catch (InsufficientProductsException e) {
+				throw insufficientProducts(e);
+			}
+			return List.of();
+
+		case "PAY": {
+			expectFields(request, 2);
+			int id = intField(request, 1);
+			var transaction = _manager.getTransaction(id)
+					.orElseThrow(() -> new RequestException("Unknown transaction id: " + id));
+			_manager.paySale(transaction);
+			return List.of();
+		}
+
+		case "SAVE": {
+			if (request.getFieldCount() > 2) {
+				throw new RequestException("Expected at most 2 fields, found " + request.getFieldCount());
+			}
+			var fileName = request.getFieldCount() == 2 ? Optional.of(request.getField(1)) : Optional.<String>empty();
+			try {
+				_manager.save(() -> fileName.orElseThrow(() -> new IllegalStateException("No file to save to")));
+			} catch (IllegalStateException | IOException e) {
+				throw new RequestException("Unable to save: " + e.getMessage());
+			}
+			return List.of();
+		}
+
+		case "LOAD":
+			expectFields(request, 2);
+			try {
+				_manager.loadFrom(request.getField(1));
+			} catch (IOException | ClassNotFoundException e) {
+				throw new RequestException("Unable to load: " + e.getMessage());
+			}
+			return List.of();
+
+		default:
+			throw new RequestException("Unknown operation: " + operation);
+		}
+	}
+
+	/**
+	 * Registers a new product, or retrieves it if it was registered meanwhile
+	 *
+	 * @param productId
+	 *            The id of the product
+	 * @return The product
+	 */
+	private Optional<Product> registerProduct(String productId) {
+		try {
+			return Optional.of(_manager.registerProduct(productId));
+		} catch (ProductAlreadyExistsException e) {
+			// Note: Another client registered it after we checked it didn't exist
+			return _manager.getProduct(productId);
+		}
+	}
+
+	/**
+	 * Creates the exception for a request without enough products
+	 *
+	 * @param e
+	 *            The exception thrown by the warehouse
+	 * @return The exception
+	 */
+	private static RequestException insufficientProducts(InsufficientProductsException e) {
+		return new RequestException("Insufficient products: " + e.getProductId() + ", requested "
+				+ e.getQuantityRequested() + ", available " + e.getQuantityAvailable());
+	}
+
+	/**
+	 * Checks that a request has a number of fields
+	 *
+	 * @param request
+	 *            The request
+	 * @param count
+	 *            The number of fields, including the operation
+	 * @throws RequestException
+	 *             If the request has any other number of fields
+	 */
+	private static void expectFields(LineTokenizer request, int count) throws RequestException {
+		if (request.getFieldCount() != count) {
+			throw new RequestException("Expected " + count + " fields, found " + request.getFieldCount());
+		}
+	}
+
+	/**
+	 * Retrieves a field of a request as an integer
+	 *
+	 * @param request
+	 *            The request
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The integer
+	 * @throws RequestException
+	 *             If the field isn't an integer
+	 */
+	private static int intField(LineTokenizer request, int fieldIdx) throws RequestException {
+		try {
+			return request.getIntField(fieldIdx);
+		} catch (NumberFormatException e) {
+			throw new RequestException("Bad integer: " + request.getField(fieldIdx));
+		}
+	}
+
+	/**
+	 * Retrieves a field of a request as a positive integer
+	 *
+	 * @param request
+	 *            The request
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The integer
+	 * @throws RequestException
+	 *             If the field isn't a positive integer
+	 */
+	private static int positiveIntField(LineTokenizer request, int fieldIdx) throws RequestException {
+		int value = intField(request, fieldIdx);
+		if (value <= 0) {
+			throw new RequestException("Expected a positive integer, found " + value);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Retrieves a field of a request as a number
+	 *
+	 * @param request
+	 *            The request
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The number
+	 * @throws RequestException
+	 *             If the field isn't a number
+	 */
+	private static double doubleField(LineTokenizer request, int fieldIdx) throws RequestException {
+		try {
+			return request.getDoubleField(fieldIdx);
+		} catch (NumberFormatException e) {
+			throw new RequestException("Bad number: " + request.getField(fieldIdx));
+		}
+	}
+
+	/**
+	 * Retrieves the partner with the id in a field of a request
+	 *
+	 * @param request
+	 *            The request
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The partner
+	 * @throws RequestException
+	 *             If no partner with the id exists
+	 */
+	private Partner partnerField(LineTokenizer request, int fieldIdx) throws RequestException {
+		var partnerId = request.getSymbol(fieldIdx);
+		return _manager.getPartner(partnerId)
+				.orElseThrow(() -> new RequestException("Unknown partner id: " + partnerId));
+	}
+
+	/**
+	 * Retrieves the product with the id in a field of a request
+	 *
+	 * @param request
+	 *            The request
+	 * @param fieldIdx
+	 *            The index of the field
+	 * @return The product
+	 * @throws RequestException
+	 *             If no product with the id exists
+	 */
+	private Product productField(LineTokenizer request, int fieldIdx) throws RequestException {
+		var productId = request.getSymbol(fieldIdx);
+		return _manager.getProduct(productId)
+				.orElseThrow(() -> new RequestException("Unknown product id: " + productId));
+	}
+}
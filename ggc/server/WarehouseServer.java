@@ -0,0 +1,109 @@
+package ggc.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import ggc.core.WarehouseManager;
+
+/**
+ * Server of a warehouse to many clients at once.
+ *
+ * Clients connect through a TCP socket on the loopback interface, and each connection is served on it's own thread, a
+ * virtual one when the runtime supports them. See `Session` for the protocol.
+ */
+public class WarehouseServer implements Closeable {
+	/** The warehouse manager all clients drive */
+	private WarehouseManager _manager;
+
+	/** The channel clients connect through */
+	private ServerSocketChannel _channel;
+
+	/** Executor of all sessions, each on it's own thread */
+	private ExecutorService _sessions = newSessionExecutor();
+
+	/**
+	 * Creates a server, listening on the loopback interface
+	 *
+	 * @param manager
+	 *            The warehouse manager all clients drive
+	 * @param port
+	 *            The port to listen on, or 0 for any free port
+	 * @throws IOException
+	 *             If unable to listen on the port
+	 */
+	public WarehouseServer(WarehouseManager manager, int port) throws IOException {
+		_manager = manager;
+		_channel = ServerSocketChannel.open();
+		try {
+			_channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		} catch (IOException e) {
+			_channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the executor of all sessions, running each one on it's own thread
+	 *
+	 * @return The executor
+	 */
+	// Note: Virtual threads are retrieved reflectively, so that we still build and run on runtimes
+	//       without them, which instead use a new platform thread for each session.
+	private static ExecutorService newSessionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				// Note: Daemon so we don't keep the application running once the server is closed
+				var thread = new Thread(runnable, "warehouse-session");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Retrieves the port the server is listening on
+	 *
+	 * @return The port
+	 * @throws IOException
+	 *             If the server is closed
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) _channel.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Serves all clients that connect, until closed
+	 *
+	 * @throws IOException
+	 *             If unable to accept a client
+	 */
+	public void serve() throws IOException {
+		while (true) {
+			try {
+				var client = _channel.accept();
+				_sessions.execute(new Session(_manager, client));
+			} catch (ClosedChannelException e) {
+				// Note: Closed by `close`, possibly from another thread
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting clients
+	 *
+	 * Clients already connected are still served until they disconnect.
+	 */
+	@Override
+	public void close() throws IOException {
+		_channel.close();
+		_sessions.shutdown();
+	}
+}
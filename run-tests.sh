@@ -6,11 +6,14 @@ let correct=0
 # Build
 ./build.sh
 
+# Note: Imports of more than a few lines are parsed in parallel, in many chunks, so the tests cover it
+parallel="-DparallelImportMinSize=1024 -DparallelImportChunkSize=256"
+
 for x in tests/*.in; do
 	echo -n "$x: "
 	
 	if [ -e ${x%.in}.import ]; then
-		java -ea -cp :po-uilib.jar:. -Dimport=${x%.in}.import -Din=$x -Dout=${x%.in}.outhyp ggc.app.App || break
+		java -ea -cp :po-uilib.jar:. $parallel -Dimport=${x%.in}.import -Din=$x -Dout=${x%.in}.outhyp ggc.app.App || break
 	else
 		java -ea -cp po-uilib.jar:. -Din=$x -Dout=${x%.in}.outhyp ggc.app.App || break
 	fi
@@ -27,9 +30,27 @@ for x in tests/*.in; do
 	let total++
 done
 
-# Remove any remaining `app*.dat` files and `.ggc` files
-rm -f app*.dat
-rm -f *.ggc
+# Unit tests of core and of the server, the latter through clients on the loopback interface
+for x in tests/ggc/*/*Test.java; do
+	echo -n "$x: "
+
+	javac -Xlint:unchecked -cp po-uilib.jar:. -d tests $x || break
+	test=${x#tests/}
+	test=${test%.java}
+	if java -ea -cp po-uilib.jar:.:tests ${test//\//.} | tail -1 | grep -qx "Ok"; then
+		let correct++
+		echo "Ok"
+	else
+		echo "Fail"
+		failures=$failures"Fail: $x\n"
+	fi
+	let total++
+done
+
+# Remove any remaining `app*.dat` files and `.ggc` files, along with their indexes
+rm -f app*.dat app*.dat.idx
+rm -f *.ggc *.ggc.idx
+rm -f tests/ggc/*/*.class
 
 let res=100*$correct/$total
 echo ""
@@ -0,0 +1,123 @@
+package ggc.core;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests of the lookups of products and partners by id range and prefix.
+ *
+ * Exits with a non-zero status if any test fails.
+ */
+public class WarehouseLookupsTest {
+	/** Number of failed checks */
+	private static int _failures = 0;
+
+	/**
+	 * Runs all tests
+	 *
+	 * @param args
+	 *            Unused
+	 * @throws Exception
+	 *             If unable to run a test
+	 */
+	public static void main(String[] args) throws Exception {
+		testProductPrefixes();
+		testProductRanges();
+		testPartnerLookups();
+
+		System.out.println(_failures == 0 ? "Ok" : "Fail: " + _failures + " check(s)");
+		if (_failures != 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates a warehouse with products of accented and mixed-case ids
+	 *
+	 * @return The warehouse
+	 * @throws Exception
+	 *             If unable to register the products
+	 */
+	private static WarehouseManager productsManager() throws Exception {
+		var manager = new WarehouseManager();
+		for (var id : List.of("SAL", "agulha", "AZOTO", "ÁGUA", "Açúcar", "AGUA", "B1")) {
+			manager.registerProduct(id);
+		}
+		return manager;
+	}
+
+	/**
+	 * Checks that products are found by prefix, ignoring case but not accents
+	 *
+	 * @throws Exception
+	 *             If unable to run the test
+	 */
+	private static void testProductPrefixes() throws Exception {
+		var manager = productsManager();
+		checkIds(manager.getProductsWithPrefix("ag"), List.of("AGUA", "agulha"), "prefix ignores case, but not accents");
+		checkIds(manager.getProductsWithPrefix("AGU"), List.of("AGUA", "agulha"), "prefix in upper case");
+		checkIds(manager.getProductsWithPrefix("á"), List.of("ÁGUA"), "accented prefix only finds accented ids");
+		checkIds(manager.getProductsWithPrefix("a"), List.of("Açúcar", "AGUA", "agulha", "AZOTO"),
+				"prefix keeps accents after it");
+		checkIds(manager.getProductsWithPrefix("AGUAS"), List.of(), "prefix longer than an id it starts with");
+		checkIds(manager.getProductsWithPrefix("saleiro"), List.of(), "prefix longer than the last id");
+		checkIds(manager.getProductsWithPrefix("x"), List.of(), "prefix after all ids");
+		checkIds(manager.getProductsWithPrefix(""), List.of("Açúcar", "AGUA", "ÁGUA", "agulha", "AZOTO", "B1", "SAL"),
+				"empty prefix finds all ids, in order");
+	}
+
+	/**
+	 * Checks that products are found by id range, with an inclusive lower bound and an exclusive upper bound
+	 *
+	 * @throws Exception
+	 *             If unable to run the test
+	 */
+	private static void testProductRanges() throws Exception {
+		var manager = productsManager();
+		checkIds(manager.getProducts("ag", "az"), List.of("AGUA", "ÁGUA", "agulha"), "range ignores case");
+		checkIds(manager.getProducts("ÁGUA", "AZOTO"), List.of("ÁGUA", "agulha"), "range of ids");
+		checkIds(manager.getProducts("a", "c"), List.of("Açúcar", "AGUA", "ÁGUA", "agulha", "AZOTO", "B1"),
+				"range keeps accented ids");
+		checkIds(manager.getProducts("SAL", "SAL"), List.of(), "empty range");
+		checkIds(manager.getProducts("z", "a"), List.of(), "reversed range");
+	}
+
+	/**
+	 * Checks that partners are found by id range and prefix
+	 *
+	 * @throws Exception
+	 *             If unable to run the test
+	 */
+	private static void testPartnerLookups() throws Exception {
+		var manager = new WarehouseManager();
+		for (var id : List.of("M2", "João", "joana", "JOAO", "m1")) {
+			manager.registerPartner(id, "Partner " + id, "Address");
+		}
+
+		checkIds(manager.getPartnersWithPrefix("jo"), List.of("joana", "JOAO", "João"), "partner prefix");
+		checkIds(manager.getPartnersWithPrefix("JOÃ"), List.of("João"), "accented partner prefix");
+		checkIds(manager.getPartnersWithPrefix("joanas"), List.of(), "partner prefix longer than an id");
+		checkIds(manager.getPartners("j", "m2"), List.of("joana", "JOAO", "João", "m1"), "partner range");
+		checkIds(manager.getPartners("m2", "j"), List.of(), "reversed partner range");
+	}
+
+	/**
+	 * Checks the ids of the products or partners found
+	 *
+	 * @param found
+	 *            The products or partners found
+	 * @param expected
+	 *            The ids expected, in order
+	 * @param description
+	 *            The description of what's checked
+	 */
+	private static void checkIds(Stream<?> found, List<String> expected, String description) {
+		var ids = found.map(value -> value instanceof Product ? ((Product) value).getId() : ((Partner) value).getId())
+				.collect(Collectors.toList());
+		if (!ids.equals(expected)) {
+			System.out.println("Failed: " + description + ", expected " + expected + ", found " + ids);
+			_failures++;
+		}
+	}
+}
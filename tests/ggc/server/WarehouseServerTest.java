@@ -0,0 +1,318 @@
+package ggc.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ggc.core.WarehouseManager;
+
+/**
+ * Tests of the server, through clients connected on the loopback interface.
+ *
+ * Exits with a non-zero status if any test fails.
+ */
+public class WarehouseServerTest {
+	/** Number of requests each client pipelines */
+	private static final int REQUEST_COUNT = 500;
+
+	/** Number of failed checks */
+	private static int _failures = 0;
+
+	/**
+	 * Runs all tests
+	 *
+	 * @param args
+	 *            Unused
+	 * @throws Exception
+	 *             If unable to run a test
+	 */
+	public static void main(String[] args) throws Exception {
+		testPipelinedInOrder();
+		testErrors();
+		testConcurrentClients();
+
+		System.out.println(_failures == 0 ? "Ok" : "Fail: " + _failures + " check(s)");
+		if (_failures != 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks that pipelined requests are answered in the order they were sent
+	 *
+	 * @throws Exception
+	 *             If unable to run the test
+	 */
+	private static void testPipelinedInOrder() throws Exception {
+		var manager = new WarehouseManager();
+		try (var server = new RunningServer(manager); var client = server.connect()) {
+			client.send("REGISTER_PARTNER|P1|Partner|Here");
+			for (int quantity = 1; quantity <= REQUEST_COUNT; quantity++) {
+				client.send("PURCHASE|P1|PR1|" + quantity + "|10");
+			}
+			client.flush();
+
+			check(client.receive().isEmpty(), "registering a partner responds with no lines");
+			int lastId = -1;
+			for (int quantity = 1; quantity <= REQUEST_COUNT; quantity++) {
+				var lines = client.receive();
+				check(lines.size() == 1, "a purchase responds with a single line");
+
+				// Note: `COMPRA|<id>|<partner>|<product>|<quantity>|...`
+				var fields = lines.get(0).split("\\|");
+				int id = Integer.parseInt(fields[1]);
+				check(id > lastId, "purchases are registered in order");
+				check(Integer.parseInt(fields[4]) == quantity, "purchases are answered in order");
+				lastId = id;
+			}
+		}
+	}
+
+	/**
+	 * Checks that failed requests are answered with an error, and that the session goes on
+	 *
+	 * @throws Exception
+	 *             If unable to run the test
+	 */
+	private static void testErrors() throws Exception {
+		var manager = new WarehouseManager();
+		try (var server = new RunningServer(manager); var client = server.connect()) {
+			client.send("REGISTER_PARTNER|P1|Partner|Here");
+			client.send("UNKNOWN");
+			client.send("SALE|P2|PR1|1|10");
+			client.send("PURCHASE|P1|PR1|2|10");
+			client.send("SALE|P1|PR1|3|10");
+			client.send("PURCHASE|P1|PR1|-1|10");
+			client.send("TRANSACTION|42");
+			client.send("DATE");
+			client.flush();
+
+			check(client.receive().isEmpty(), "registering a partner responds with no lines");
+			client.receiveError("Unknown operation: UNKNOWN");
+			client.receiveError(null);
+			check(client.receive().size() == 1, "a purchase responds with a single line");
+			client.receiveError("Insufficient products: PR1, requested 3, available 2");
+			client.receiveError("Expected a positive integer, found -1");
+			client.receiveError("Unknown transaction id: 42");
+			check(client.receive().equals(List.of("0")), "the session goes on after errors");
+		}
+	}
+
+	/**
+	 * Checks that clients connected at once are all served
+	 *
+	 * @throws Exception
+	 *             If unable to run the test
+	 */
+	private static void testConcurrentClients() throws Exception {
+		var manager = new WarehouseManager();
+		var executor = Executors.newFixedThreadPool(2);
+		try (var server = new RunningServer(manager)) {
+			var results = new ArrayList<Future<?>>();
+			for (var partnerId : List.of("P1", "P2")) {
+				results.add(executor.submit(() -> {
+					try (var client = server.connect()) {
+						client.send("REGISTER_PARTNER|" + partnerId + "|Partner|Here");
+						for (int i = 0; i < REQUEST_COUNT; i++) {
+							client.send("PURCHASE|" + partnerId + "|PR1|2|10");
+							client.send("SALE|" + partnerId + "|PR1|1|10");
+						}
+						client.flush();
+
+						client.receive();
+						for (int i = 0; i < REQUEST_COUNT; i++) {
+							check(client.receive().size() == 1, "a purchase responds with a single line");
+							check(client.receive().isEmpty(), "a sale responds with no lines");
+						}
+					}
+					return null;
+				}));
+			}
+
+			for (var result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					fail("client failed: " + e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		int quantity = manager.getProducts().mapToInt(manager::productTotalQuantity).sum();
+		check(quantity == 2 * REQUEST_COUNT, "every request of both clients is applied, found " + quantity);
+		check(manager.getTransactions().count() == 4 * REQUEST_COUNT, "every transaction is registered");
+	}
+
+	/**
+	 * Checks a condition, counting a failure if it doesn't hold
+	 *
+	 * @param condition
+	 *            The condition
+	 * @param description
+	 *            The description of what's checked
+	 */
+	private static synchronized void check(boolean condition, String description) {
+		if (!condition) {
+			fail(description);
+		}
+	}
+
+	/**
+	 * Counts a failure
+	 *
+	 * @param description
+	 *            The description of the failure
+	 */
+	private static synchronized void fail(String description) {
+		System.out.println("Failed: " + description);
+		_failures++;
+	}
+
+	/** Server serving on a free port, on it's own thread */
+	private static class RunningServer implements AutoCloseable {
+		/** The server */
+		private WarehouseServer _server;
+
+		/** The thread serving */
+		private Thread _thread;
+
+		/**
+		 * Starts serving a warehouse
+		 *
+		 * @param manager
+		 *            The warehouse manager
+		 * @throws IOException
+		 *             If unable to listen
+		 */
+		RunningServer(WarehouseManager manager) throws IOException {
+			_server = new WarehouseServer(manager, 0);
+			_thread = new Thread(() -> {
+				try {
+					_server.serve();
+				} catch (IOException e) {
+					fail("unable to serve: " + e);
+				}
+			});
+			_thread.start();
+		}
+
+		/**
+		 * Connects a client
+		 *
+		 * @return The client
+		 * @throws IOException
+		 *             If unable to connect
+		 */
+		Client connect() throws IOException {
+			return new Client(_server.getPort());
+		}
+
+		@Override
+		public void close() throws IOException, InterruptedException {
+			_server.close();
+			_thread.join();
+		}
+	}
+
+	/** Client connected to a server */
+	private static class Client implements AutoCloseable {
+		/** The socket to the server */
+		private Socket _socket;
+
+		/** The requests sent */
+		private BufferedWriter _requests;
+
+		/** The responses received */
+		private BufferedReader _responses;
+
+		/**
+		 * Connects to a server
+		 *
+		 * @param port
+		 *            The port of the server
+		 * @throws IOException
+		 *             If unable to connect
+		 */
+		Client(int port) throws IOException {
+			_socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			_requests = new BufferedWriter(new OutputStreamWriter(_socket.getOutputStream(), StandardCharsets.UTF_8));
+			_responses = new BufferedReader(new InputStreamReader(_socket.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Sends a request, without waiting for it's response
+		 *
+		 * @param request
+		 *            The request
+		 * @throws IOException
+		 *             If unable to send it
+		 */
+		void send(String request) throws IOException {
+			_requests.write(request);
+			_requests.write('\n');
+		}
+
+		/**
+		 * Flushes all requests sent
+		 *
+		 * @throws IOException
+		 *             If unable to send them
+		 */
+		void flush() throws IOException {
+			_requests.flush();
+		}
+
+		/**
+		 * Receives a response that isn't an error
+		 *
+		 * @return The lines of the response
+		 * @throws IOException
+		 *             If unable to receive it
+		 */
+		List<String> receive() throws IOException {
+			var header = _responses.readLine();
+			if (header == null || !header.startsWith("OK|")) {
+				fail("expected a response, found " + header);
+				return List.of();
+			}
+
+			var lines = new ArrayList<String>();
+			for (int count = Integer.parseInt(header.substring(3)); count > 0; count--) {
+				lines.add(_responses.readLine());
+			}
+			return lines;
+		}
+
+		/**
+		 * Receives an error
+		 *
+		 * @param message
+		 *            The expected message, or `null` for any
+		 * @throws IOException
+		 *             If unable to receive it
+		 */
+		void receiveError(String message) throws IOException {
+			var line = _responses.readLine();
+			if (line == null || !line.startsWith("ERROR|")
+					|| (message != null && !line.equals("ERROR|" + message))) {
+				fail("expected error " + message + ", found " + line);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			_socket.close();
+		}
+	}
+}